@@ -27,13 +27,17 @@ public class ExceptionMappers {
 
   @ServerExceptionMapper
   public Uni<Response> handleException(WebApplicationException e) {
+    return Uni.createFrom().item(toResponse(e));
+  }
+
+  /** The error response of an exception, as it is sent to the clients. */
+  public static Response toResponse(WebApplicationException e) {
     var error = new Error();
     error.code = e.getResponse().getStatus() + "";
     error.message = e.getResponse().getStatusInfo().getReasonPhrase();
     error.reason = e.getLocalizedMessage();
 
-    return Uni.createFrom()
-        .item(Response.status(e.getResponse().getStatus()).entity(error).build());
+    return Response.status(e.getResponse().getStatus()).entity(error).build();
   }
 
   @ServerExceptionMapper
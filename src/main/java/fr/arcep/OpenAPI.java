@@ -222,6 +222,23 @@ import org.eclipse.microprofile.openapi.annotations.tags.Tag;
                   name = "offset",
                   schema = @Schema(type = SchemaType.INTEGER, format = "int32", defaultValue = "0"),
                   description = "The offset of the first element to return."),
+              @Parameter(
+                  in = ParameterIn.QUERY,
+                  name = "cursor",
+                  schema = @Schema(type = SchemaType.STRING),
+                  description =
+                      """
+                        The continuation token of a keyset pagination.
+
+                        * Pass an empty value to get the first page.
+                        * Pass the value of the `X-Next-Cursor` response header to get the next page.
+                          The `Link` response header also contains the URL of the next page.
+                        * There is no next page when the `X-Next-Cursor` header is missing.
+
+                        The `offset` query parameter is ignored, and the `sort` must not change between pages.
+                        Unlike the offset pagination, the cost of a page does not depend on its depth.
+                        The `X-Total-Count` header is only returned with the first page.
+                        """),
               @Parameter(
                   in = ParameterIn.QUERY,
                   name = "fields",
@@ -271,6 +288,23 @@ import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 
                         In production mode, this header must be replaced by a valid JWT token.
                         """),
+              @Parameter(
+                  name = "X-Total-Count-Mode",
+                  in = ParameterIn.HEADER,
+                  schema =
+                      @Schema(
+                          type = SchemaType.STRING,
+                          enumeration = {"exact", "estimated", "none"},
+                          defaultValue = "exact"),
+                  description =
+                      """
+                        How the `X-Total-Count` response header is computed.
+
+                        * `exact`: count all the matching elements.
+                        * `estimated`: use the collection metadata when there is no filter,
+                          otherwise count all the matching elements.
+                        * `none`: do not compute the total, the `X-Total-Count` header is omitted.
+                        """),
               @Parameter(
                   name = "X-Allowed-MimeType",
                   in = ParameterIn.HEADER,
@@ -289,6 +323,12 @@ import org.eclipse.microprofile.openapi.annotations.tags.Tag;
                   name = "X-Total-Count",
                   description = "Total number of items matching criteria",
                   schema = @Schema(type = SchemaType.INTEGER, format = "int32", example = "42")),
+              @Header(
+                  name = "X-Next-Cursor",
+                  description =
+                      "Continuation token of the next page, when using the `cursor` query"
+                          + " parameter",
+                  schema = @Schema(type = SchemaType.STRING)),
               @Header(
                   name = "X-Result-Count",
                   description = "Actual number of items returned",
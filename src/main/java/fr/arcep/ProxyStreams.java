@@ -0,0 +1,61 @@
+package fr.arcep;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Multi;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Relay of the streams of the services to the clients of the proxies.
+ *
+ * <p>The events are relayed as the JSON text sent by the service, without being parsed nor
+ * serialized again, and only as fast as the client reads them. They are counted by the {@code
+ * proxies.stream.events} and {@code proxies.stream.bytes} metrics.
+ */
+@ApplicationScoped
+public class ProxyStreams {
+
+  @Inject MeterRegistry meterRegistry;
+
+  /**
+   * Relay a stream.
+   *
+   * @param clientId The client of the proxy, the tag of the metrics
+   * @param events The JSON events sent by the service
+   * @return The events, typed as the streams of the proxies
+   */
+  public Multi<Object> relay(String clientId, Multi<String> events) {
+    var eventCounter = meterRegistry.counter("proxies.stream.events", "client", clientId);
+    var byteCounter = meterRegistry.counter("proxies.stream.bytes", "client", clientId);
+
+    return events
+        .onItem()
+        .invoke(
+            e -> {
+              eventCounter.increment();
+              byteCounter.increment(utf8Length(e));
+            })
+        .onItem()
+        .castTo(Object.class);
+  }
+
+  /** The size of a string in UTF-8, without encoding it. */
+  static long utf8Length(String s) {
+    long length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      var c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+
+    return length;
+  }
+}
@@ -0,0 +1,48 @@
+package fr.arcep;
+
+import fr.arcep.attachment.AttachmentApi;
+import fr.arcep.attachment.AttachmentService;
+import fr.arcep.note.NoteApi;
+import fr.arcep.note.NoteService;
+import fr.arcep.troubleticket.TroubleTicketApi;
+import fr.arcep.troubleticket.TroubleTicketService;
+import io.quarkus.arc.properties.IfBuildProperty;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+
+/**
+ * The service APIs called over HTTP, when the proxies are deployed apart from the services.
+ *
+ * <p>They replace the in-process implementations when built with {@code
+ * tmf.services.transport=http}. The URLs are the {@code quarkus.rest-client.*.url} properties.
+ */
+@ApplicationScoped
+@IfBuildProperty(name = "tmf.services.transport", stringValue = "http")
+public class RemoteServices {
+
+  @Inject @RestClient TroubleTicketService troubleTicketService;
+
+  @Inject @RestClient NoteService noteService;
+
+  @Inject @RestClient AttachmentService attachmentService;
+
+  @Produces
+  @ApplicationScoped
+  TroubleTicketApi troubleTicketApi() {
+    return troubleTicketService;
+  }
+
+  @Produces
+  @ApplicationScoped
+  NoteApi noteApi() {
+    return noteService;
+  }
+
+  @Produces
+  @ApplicationScoped
+  AttachmentApi attachmentApi() {
+    return attachmentService;
+  }
+}
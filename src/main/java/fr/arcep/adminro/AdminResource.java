@@ -1,8 +1,9 @@
 package fr.arcep.adminro;
 
 import fr.arcep.OpenAPI;
+import fr.arcep.ProxyStreams;
 import fr.arcep.tmf.model.TroubleTicket;
-import fr.arcep.troubleticket.TroubleTicketService;
+import fr.arcep.troubleticket.TroubleTicketApi;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
@@ -25,7 +26,6 @@ import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
 @Path("/api/adminRO")
@@ -34,7 +34,9 @@ public class AdminResource {
 
   private static final String CLIENT_ID = "admin";
 
-  @Inject @RestClient TroubleTicketService troubleTicketService;
+  @Inject TroubleTicketApi troubleTicketService;
+
+  @Inject ProxyStreams streams;
 
   @GET
   @Consumes(MediaType.APPLICATION_JSON)
@@ -42,7 +44,11 @@ public class AdminResource {
   @Operation(summary = "List all trouble tickets.", description = OpenAPI.DOC_OPERATION_LIST_DESC)
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -74,7 +80,8 @@ public class AdminResource {
               mediaType = MediaType.SERVER_SENT_EVENTS,
               schema = @Schema(implementation = TroubleTicket.class)))
   public Multi<Object> stream(@Schema(hidden = true) @Context UriInfo uriInfo) {
-    return troubleTicketService.stream(CLIENT_ID, uriInfo.getQueryParameters())
+    return streams
+        .relay(CLIENT_ID, troubleTicketService.streamRaw(CLIENT_ID, uriInfo.getQueryParameters()))
         .onFailure(WebApplicationException.class)
         .recoverWithItem(t -> WebApplicationException.class.cast(t).getResponse());
   }
@@ -1,7 +1,8 @@
 package fr.arcep.anomalieadresse;
 
 import fr.arcep.OpenAPI;
-import fr.arcep.troubleticket.TroubleTicketService;
+import fr.arcep.ProxyStreams;
+import fr.arcep.troubleticket.TroubleTicketApi;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
@@ -27,7 +28,6 @@ import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
 @Path("/api/anomalieAdresse")
@@ -36,7 +36,9 @@ public class AnomalieAdresseResource {
 
   private static final String CLIENT_ID = "anomalieAdresse";
 
-  @Inject @RestClient TroubleTicketService troubleTicketService;
+  @Inject TroubleTicketApi troubleTicketService;
+
+  @Inject ProxyStreams streams;
 
   @GET
   @Consumes(MediaType.APPLICATION_JSON)
@@ -46,7 +48,11 @@ public class AnomalieAdresseResource {
       description = OpenAPI.DOC_OPERATION_LIST_DESC)
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -78,7 +84,8 @@ public class AnomalieAdresseResource {
               mediaType = MediaType.SERVER_SENT_EVENTS,
               schema = @Schema(implementation = AnomalieAdresse.class)))
   public Multi<Object> stream(@Schema(hidden = true) @Context UriInfo uriInfo) {
-    return troubleTicketService.stream(CLIENT_ID, uriInfo.getQueryParameters())
+    return streams
+        .relay(CLIENT_ID, troubleTicketService.streamRaw(CLIENT_ID, uriInfo.getQueryParameters()))
         .onFailure(WebApplicationException.class)
         .recoverWithItem(t -> WebApplicationException.class.cast(t).getResponse());
   }
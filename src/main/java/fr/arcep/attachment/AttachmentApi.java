@@ -0,0 +1,34 @@
+package fr.arcep.attachment;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import java.util.UUID;
+
+/**
+ * The attachment API, as called by the proxies.
+ *
+ * <p>{@link AttachmentLocalService} calls it in-process, {@link AttachmentService} over HTTP.
+ */
+public interface AttachmentApi {
+
+  Uni<Response> list(String clientId, MultivaluedMap<String, String> query);
+
+  Multi<Object> stream(String clientId, MultivaluedMap<String, String> query);
+
+  /** The stream, as the JSON text of each event. */
+  Multi<String> streamRaw(String clientId, MultivaluedMap<String, String> query);
+
+  Uni<Response> count(String clientId, MultivaluedMap<String, String> query);
+
+  Uni<Response> get(String clientId, UUID id);
+
+  Uni<Response> download(String clientId, UUID id);
+
+  Uni<Response> create(String clientId, AttachmentFormData data);
+
+  Uni<Response> create(String clientId, AttachmentFormData data, String allowedMimeType);
+
+  Uni<Response> delete(String clientId, UUID id);
+}
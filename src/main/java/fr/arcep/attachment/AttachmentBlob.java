@@ -0,0 +1,36 @@
+package fr.arcep.attachment;
+
+import io.quarkus.mongodb.panache.common.MongoEntity;
+import java.util.Date;
+import org.bson.codecs.pojo.annotations.BsonId;
+
+/**
+ * The content of the attachments of a domain, shared by the attachments with the same SHA-256.
+ *
+ * <p>The S3 object is deleted once no attachment references it anymore.
+ */
+@MongoEntity(collection = "attachment_blob")
+public class AttachmentBlob {
+
+  /** {@code <domain>:<hash>} */
+  @BsonId public String id;
+
+  public String domain;
+
+  /** The SHA-256 of the content, hex encoded */
+  public String hash;
+
+  /** The key of the S3 object in the bucket of the domain */
+  public String key;
+
+  public long size;
+
+  /** The number of attachments referencing the content */
+  public long refCount;
+
+  public Date creationDate;
+
+  static String id(String domain, String hash) {
+    return domain + ":" + hash;
+  }
+}
@@ -0,0 +1,87 @@
+package fr.arcep.attachment;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepositoryBase;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.util.Date;
+
+/**
+ * The reference counts of the attachment contents.
+ *
+ * <p>A blob is only deleted once its count is down to zero, with a delete conditioned on it. So a
+ * reference taken concurrently either keeps the blob, or creates a new one.
+ */
+@ApplicationScoped
+public class AttachmentBlobRepository
+    implements ReactivePanacheMongoRepositoryBase<AttachmentBlob, String> {
+
+  /**
+   * Reference an existing content.
+   *
+   * @param domain
+   * @param hash
+   * @return The blob, or {@code null} if there is no content with this hash
+   */
+  public Uni<AttachmentBlob> acquire(String domain, String hash) {
+    return mongoCollection()
+        .findOneAndUpdate(
+            Filters.and(
+                Filters.eq("_id", AttachmentBlob.id(domain, hash)), Filters.gt("refCount", 0)),
+            Updates.inc("refCount", 1),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+  }
+
+  /**
+   * Reference a content which has just been stored, creating its blob if needed.
+   *
+   * @param domain
+   * @param hash
+   * @param key The key of the stored content
+   * @param size
+   * @return The blob, whose key is not {@code key} if the same content was stored concurrently
+   */
+  public Uni<AttachmentBlob> register(String domain, String hash, String key, long size) {
+    return mongoCollection()
+        .findOneAndUpdate(
+            Filters.eq("_id", AttachmentBlob.id(domain, hash)),
+            Updates.combine(
+                Updates.inc("refCount", 1),
+                Updates.setOnInsert("domain", domain),
+                Updates.setOnInsert("hash", hash),
+                Updates.setOnInsert("key", key),
+                Updates.setOnInsert("size", size),
+                Updates.setOnInsert("creationDate", new Date())),
+            new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+  }
+
+  /**
+   * Drop a reference to a content.
+   *
+   * @param domain
+   * @param hash
+   * @return The key of the content if it is not referenced anymore, else {@code null}
+   */
+  public Uni<String> release(String domain, String hash) {
+    var id = AttachmentBlob.id(domain, hash);
+
+    return mongoCollection()
+        .findOneAndUpdate(
+            Filters.eq("_id", id),
+            Updates.inc("refCount", -1),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER))
+        .chain(
+            blob -> {
+              if (blob == null || blob.refCount > 0) {
+                return Uni.createFrom().nullItem();
+              }
+
+              return mongoCollection()
+                  .deleteOne(Filters.and(Filters.eq("_id", id), Filters.lte("refCount", 0)))
+                  .map(r -> r.getDeletedCount() > 0 ? blob.key : null);
+            });
+  }
+}
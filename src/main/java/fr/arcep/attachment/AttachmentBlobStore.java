@@ -0,0 +1,134 @@
+package fr.arcep.attachment;
+
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+
+/**
+ * Storage of the attachment contents, deduplicated by their SHA-256.
+ *
+ * <p>The first upload of a content keeps its own key, which is then referenced by the next
+ * attachments of the same content: those are not sent to S3 again. A content is indexed by its hash
+ * in the {@code attachment_blob} collection, with the number of attachments referencing it.
+ */
+@ApplicationScoped
+public class AttachmentBlobStore {
+
+  @Inject S3AsyncClient s3;
+
+  @Inject AttachmentBlobRepository repository;
+
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static String toHex(MessageDigest digest) {
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Hash a file, on a worker thread.
+   *
+   * @param file
+   * @return The SHA-256 of the file, hex encoded
+   */
+  public Uni<String> hash(File file) {
+    return Uni.createFrom()
+        .item(
+            () -> {
+              var digest = newDigest();
+              try (var stream = new FileInputStream(file)) {
+                var buffer = new byte[64 * 1024];
+                for (int n; (n = stream.read(buffer)) > 0; ) {
+                  digest.update(buffer, 0, n);
+                }
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+
+              return toHex(digest);
+            })
+        .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+  }
+
+  /**
+   * Reference a content, only uploading it if it is not already stored.
+   *
+   * @param domain
+   * @param hash
+   * @param id The id of the attachment, the key of the content if it is uploaded
+   * @param size
+   * @param upload Store the content under {@code id}
+   * @return The key of the content
+   */
+  public Uni<String> store(
+      String domain, String hash, String id, long size, Supplier<Uni<Void>> upload) {
+    return repository
+        .acquire(domain, hash)
+        .chain(
+            blob -> {
+              if (blob != null) {
+                return Uni.createFrom().item(blob.key);
+              }
+
+              return upload.get().chain(() -> adopt(domain, hash, id, size));
+            });
+  }
+
+  /**
+   * Reference a content already stored under the id of an attachment. The stored object is dropped
+   * if the same content is already stored.
+   *
+   * @param domain
+   * @param hash
+   * @param id The id of the attachment, the key of the stored content
+   * @param size
+   * @return The key of the content
+   */
+  public Uni<String> adopt(String domain, String hash, String id, long size) {
+    return repository
+        .register(domain, hash, id, size)
+        .call(blob -> blob.key.equals(id) ? Uni.createFrom().voidItem() : deleteObject(domain, id))
+        .map(blob -> blob.key);
+  }
+
+  /**
+   * Drop a reference to a content, and delete it if it was the last one.
+   *
+   * @param domain
+   * @param hash
+   */
+  public Uni<Void> release(String domain, String hash) {
+    return repository
+        .release(domain, hash)
+        .chain(key -> key == null ? Uni.createFrom().voidItem() : deleteObject(domain, key));
+  }
+
+  private Uni<Void> deleteObject(String domain, String key) {
+    var deleteRequest = DeleteObjectRequest.builder().bucket(domain).key(key).build();
+
+    return Uni.createFrom()
+        .completionStage(() -> s3.deleteObject(deleteRequest))
+        .onFailure()
+        .invoke(t -> Log.errorf(t, "Object %s not deleted", key))
+        .onFailure()
+        .recoverWithNull()
+        .replaceWithVoid();
+  }
+}
@@ -0,0 +1,333 @@
+package fr.arcep.attachment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.arc.Arc;
+import io.quarkus.logging.Log;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Incoming;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+/**
+ * Copy of the most downloaded attachment contents on the local disk, so they are sent with {@code
+ * sendfile} instead of being read from S3 again.
+ *
+ * <p>A content is copied in the background on its first download, and the least recently used ones
+ * are dropped once {@code tmf.attachment.cache.max-size} bytes are used. The contents of the
+ * deleted attachments are dropped on every node: each one reads the {@code attachment-delete} topic
+ * with its own consumer group. It is disabled unless {@code tmf.attachment.cache.enabled} is set.
+ *
+ * <p>A copy returned by {@link #get} is pinned until the end of the current request: when it is
+ * dropped meanwhile, its file is only deleted once it is sent.
+ */
+@ApplicationScoped
+public class AttachmentContentCache {
+
+  @Inject S3AsyncClient s3;
+
+  @Inject MeterRegistry meterRegistry;
+
+  @Inject CurrentVertxRequest currentRequest;
+
+  @ConfigProperty(name = "tmf.attachment.cache.enabled", defaultValue = "false")
+  boolean enabled;
+
+  /** The directory of the copies, emptied at startup */
+  @ConfigProperty(name = "tmf.attachment.cache.directory")
+  Optional<Path> directory;
+
+  /** The maximum number of bytes used on the disk */
+  @ConfigProperty(name = "tmf.attachment.cache.max-size", defaultValue = "1073741824")
+  long maxSize;
+
+  /** The larger contents are not copied */
+  @ConfigProperty(name = "tmf.attachment.cache.max-object-size", defaultValue = "67108864")
+  long maxObjectSize;
+
+  /** The copies, the least recently used first */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The copies in progress */
+  private final ConcurrentHashMap<Key, Boolean> pending = new ConcurrentHashMap<>();
+
+  /** The files being sent, with their number of downloads */
+  private final Map<Path, Integer> pins = new HashMap<>();
+
+  /** The pinned files dropped from the cache, deleted once they are sent */
+  private final Set<Path> dropped = new HashSet<>();
+
+  private Path root;
+  private long size;
+
+  private Counter hits;
+  private Counter misses;
+  private Counter bytesSaved;
+
+  /**
+   * A copied content.
+   *
+   * @param path The file of the copy
+   * @param size
+   * @param eTag The ETag of the object in S3
+   * @param lastModified
+   */
+  public record Entry(Path path, long size, String eTag, Instant lastModified) {}
+
+  private record Key(String domain, String key) {}
+
+  @PostConstruct
+  void init() {
+    hits = meterRegistry.counter("attachments.cache", "result", "hit");
+    misses = meterRegistry.counter("attachments.cache", "result", "miss");
+    bytesSaved =
+        Counter.builder("attachments.cache.saved")
+            .description("Number of bytes sent from the cache instead of S3")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    Gauge.builder("attachments.cache.size", this, c -> c.getSize())
+        .description("Number of bytes used by the cache")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("attachments.cache.hit.ratio", this, c -> c.getHitRatio())
+        .description("Part of the downloads sent from the cache")
+        .register(meterRegistry);
+
+    if (!enabled) {
+      return;
+    }
+
+    root =
+        directory.orElseGet(
+            () -> Path.of(System.getProperty("java.io.tmpdir"), "attachment-cache"));
+    try {
+      if (Files.exists(root)) {
+        try (Stream<Path> files = Files.walk(root)) {
+          files
+              .sorted(Comparator.reverseOrder())
+              .filter(p -> !p.equals(root))
+              .forEach(this::delete);
+        }
+      }
+
+      Files.createDirectories(root);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    Log.infof("Attachment cache of %d bytes in %s", maxSize, root);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get the copy of a content. On a miss, the content is copied in the background if it is small
+   * enough.
+   *
+   * @param domain
+   * @param key The key of the object
+   * @param size The size of the content, {@code 0} if it is unknown
+   * @return The copy, if there is one, pinned until the end of the current request
+   */
+  public Optional<Entry> get(String domain, String key, long size) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+
+    var k = new Key(domain, key);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(k);
+      if (entry != null) {
+        pins.merge(entry.path(), 1, Integer::sum);
+      }
+    }
+
+    if (entry != null) {
+      if (Files.exists(entry.path())) {
+        hits.increment();
+        releaseOnEnd(entry);
+        return Optional.of(entry);
+      }
+
+      release(entry);
+    }
+
+    misses.increment();
+    if (size > 0 && size <= maxObjectSize) {
+      fill(k);
+    }
+
+    return Optional.empty();
+  }
+
+  /** Count the bytes sent from a copy. */
+  public void served(long length) {
+    bytesSaved.increment(length);
+  }
+
+  /**
+   * Drop the copy of a content.
+   *
+   * @param domain
+   * @param key The key of the object
+   */
+  public void invalidate(String domain, String key) {
+    var k = new Key(domain, key);
+    pending.remove(k);
+
+    Entry entry;
+    synchronized (this) {
+      entry = entries.remove(k);
+      if (entry != null) {
+        size -= entry.size();
+      }
+    }
+
+    if (entry != null) {
+      drop(entry.path());
+      Log.debugf("Attachment %s dropped from the cache", key);
+    }
+  }
+
+  /** Release a copy once the current request ends, or right away without a request. */
+  private void releaseOnEnd(Entry entry) {
+    var context = Arc.container().requestContext().isActive() ? currentRequest.getCurrent() : null;
+    if (context == null) {
+      release(entry);
+    } else {
+      context.addEndHandler(v -> release(entry));
+    }
+  }
+
+  /** Unpin a copy, and delete its file if it was dropped while it was sent. */
+  private void release(Entry entry) {
+    var path = entry.path();
+    boolean delete;
+    synchronized (this) {
+      pins.computeIfPresent(path, (p, count) -> count == 1 ? null : count - 1);
+      delete = !pins.containsKey(path) && dropped.remove(path);
+    }
+
+    if (delete) {
+      delete(path);
+    }
+  }
+
+  /** Delete the file of a dropped copy, unless it is being sent. */
+  private void drop(Path path) {
+    synchronized (this) {
+      if (pins.containsKey(path)) {
+        dropped.add(path);
+        return;
+      }
+    }
+
+    delete(path);
+  }
+
+  @Incoming("attachment-delete-cache")
+  @Blocking
+  public void onDelete(AttachmentNotification attachment) {
+    if (enabled) {
+      invalidate(
+          attachment.domain, attachment.contentKey != null ? attachment.contentKey : attachment.id);
+    }
+  }
+
+  synchronized long getSize() {
+    return size;
+  }
+
+  double getHitRatio() {
+    var total = hits.count() + misses.count();
+    return total == 0 ? 0 : hits.count() / total;
+  }
+
+  /** Copy a content, unless it is already being copied. */
+  private void fill(Key k) {
+    if (pending.putIfAbsent(k, Boolean.TRUE) != null) {
+      return;
+    }
+
+    var file = root.resolve(UUID.randomUUID().toString());
+    var request = GetObjectRequest.builder().bucket(k.domain()).key(k.key()).build();
+
+    Uni.createFrom()
+        .completionStage(() -> s3.getObject(request, AsyncResponseTransformer.toFile(file)))
+        .subscribe()
+        .with(
+            r -> {
+              // dropped while it was copied
+              if (pending.remove(k) == null) {
+                delete(file);
+                return;
+              }
+
+              add(k, new Entry(file, r.contentLength(), r.eTag(), r.lastModified()));
+            },
+            t -> {
+              pending.remove(k);
+              delete(file);
+              Log.warnf(t, "Attachment %s not cached", k.key());
+            });
+  }
+
+  private void add(Key k, Entry entry) {
+    var evicted = new ArrayList<Entry>();
+
+    synchronized (this) {
+      var previous = entries.put(k, entry);
+      if (previous != null) {
+        size -= previous.size();
+        evicted.add(previous);
+      }
+
+      size += entry.size();
+      var it = entries.entrySet().iterator();
+      while (size > maxSize && it.hasNext()) {
+        var eldest = it.next();
+        it.remove();
+        size -= eldest.getValue().size();
+        evicted.add(eldest.getValue());
+      }
+    }
+
+    evicted.forEach(e -> drop(e.path()));
+    Log.debugf("Attachment %s cached, %d evicted", k.key(), evicted.size());
+  }
+
+  private void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      Log.warnf(e, "Unable to delete %s", path);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package fr.arcep.attachment;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import fr.arcep.tmf.model.StatusChange;
 import fr.arcep.tmf.util.EntityBase;
@@ -25,6 +26,18 @@ public class AttachmentEntity extends EntityBase {
   @JsonProperty(access = JsonProperty.Access.READ_ONLY)
   public List<StatusChange> statusChange = new ArrayList<>();
 
+  /** The SHA-256 of the content, hex encoded */
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public String contentHash;
+
+  /** The key of the S3 object, shared with the attachments of the same content */
+  @JsonIgnore public String contentKey;
+
+  /** The key of the S3 object, the id for the attachments stored before the deduplication. */
+  public String objectKey() {
+    return contentKey != null ? contentKey : id;
+  }
+
   public static AttachmentEntity fromMap(Map<String, Object> map) {
     return EntityBase.fromMap(map, AttachmentEntity.class, FIELDS_IGNORED);
   }
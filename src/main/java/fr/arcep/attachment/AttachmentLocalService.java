@@ -0,0 +1,50 @@
+package fr.arcep.attachment;
+
+import fr.arcep.tmf.util.LocalCall;
+import fr.arcep.tmf.util.LocalServiceBase;
+import io.quarkus.arc.DefaultBean;
+import io.quarkus.arc.Unremovable;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Dependent;
+import jakarta.enterprise.inject.Typed;
+import jakarta.ws.rs.core.Response;
+import java.util.UUID;
+
+/**
+ * The attachment API called in-process, through {@link AttachmentResource}.
+ *
+ * <p>It is replaced by {@link AttachmentService} when built with {@code
+ * tmf.services.transport=http}.
+ */
+@DefaultBean
+@ApplicationScoped
+public class AttachmentLocalService extends LocalServiceBase<AttachmentResource>
+    implements AttachmentApi {
+
+  @Override
+  protected Class<Local> resourceType() {
+    return Local.class;
+  }
+
+  @Override
+  public Uni<Response> download(String clientId, UUID id) {
+    return call(() -> resource(LocalCall.of(clientId, "GET", null)).download(id, null, null));
+  }
+
+  @Override
+  public Uni<Response> create(String clientId, AttachmentFormData data) {
+    return create(clientId, data, null);
+  }
+
+  @Override
+  public Uni<Response> create(String clientId, AttachmentFormData data, String allowedMimeType) {
+    return call(() -> resource(LocalCall.of(clientId, "POST", null)).create(data, allowedMimeType));
+  }
+
+  /** The resource of a call, injected as the one of a request. It is only looked up. */
+  @Unremovable
+  @Dependent
+  @Typed(Local.class)
+  static class Local extends AttachmentResource {}
+}
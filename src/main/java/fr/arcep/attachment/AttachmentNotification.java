@@ -0,0 +1,18 @@
+package fr.arcep.attachment;
+
+public class AttachmentNotification {
+
+  public String id;
+  public String domain;
+  public String contentHash;
+  public String contentKey;
+
+  public AttachmentNotification() {}
+
+  public AttachmentNotification(AttachmentEntity entity) {
+    this.id = entity.id;
+    this.domain = entity.domain;
+    this.contentHash = entity.contentHash;
+    this.contentKey = entity.contentKey;
+  }
+}
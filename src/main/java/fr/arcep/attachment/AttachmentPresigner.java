@@ -0,0 +1,137 @@
+package fr.arcep.attachment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+/**
+ * Presigned URLs of the attachment contents, so the clients send and read the bytes directly from
+ * S3 instead of through the API.
+ *
+ * <p>The extension does not provide a presigner, so it is built from the configuration of the S3
+ * client. It is disabled unless {@code tmf.attachment.presign.enabled} is set.
+ */
+@ApplicationScoped
+public class AttachmentPresigner {
+
+  @Inject S3AsyncClient s3;
+
+  @ConfigProperty(name = "tmf.attachment.presign.enabled", defaultValue = "false")
+  boolean enabled;
+
+  /** How long a presigned URL can be used */
+  @ConfigProperty(name = "tmf.attachment.presign.duration", defaultValue = "PT5M")
+  Duration duration;
+
+  @ConfigProperty(name = "quarkus.s3.path-style-access", defaultValue = "false")
+  boolean pathStyleAccess;
+
+  @ConfigProperty(name = "quarkus.s3.aws.credentials.type", defaultValue = "default")
+  String credentialsType;
+
+  @ConfigProperty(name = "quarkus.s3.aws.credentials.static-provider.access-key-id")
+  Optional<String> accessKeyId;
+
+  @ConfigProperty(name = "quarkus.s3.aws.credentials.static-provider.secret-access-key")
+  Optional<String> secretAccessKey;
+
+  private S3Presigner presigner;
+
+  @PostConstruct
+  void init() {
+    if (!enabled) {
+      return;
+    }
+
+    var configuration = s3.serviceClientConfiguration();
+    var builder =
+        S3Presigner.builder()
+            .region(configuration.region())
+            .credentialsProvider(getCredentialsProvider())
+            .serviceConfiguration(
+                S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build());
+    configuration.endpointOverride().ifPresent(builder::endpointOverride);
+
+    presigner = builder.build();
+  }
+
+  @PreDestroy
+  void close() {
+    if (presigner != null) {
+      presigner.close();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   * Presign the download of a content.
+   *
+   * @param bucket
+   * @param key
+   * @param filename The name of the downloaded file
+   * @param mimeType
+   * @return The URL
+   */
+  public PresignedUrl get(String bucket, String key, String filename, String mimeType) {
+    var request =
+        GetObjectRequest.builder()
+            .bucket(bucket)
+            .key(key)
+            .responseContentDisposition("attachment; filename=\"" + filename + "\"")
+            .responseContentType(mimeType)
+            .build();
+
+    var presigned =
+        presigner.presignGetObject(r -> r.signatureDuration(duration).getObjectRequest(request));
+
+    return new PresignedUrl("GET", presigned.url().toString(), Date.from(presigned.expiration()));
+  }
+
+  /**
+   * Presign the upload of a content.
+   *
+   * @param bucket
+   * @param key
+   * @return The URL
+   */
+  public PresignedUrl put(String bucket, String key) {
+    var request = PutObjectRequest.builder().bucket(bucket).key(key).build();
+
+    var presigned =
+        presigner.presignPutObject(r -> r.signatureDuration(duration).putObjectRequest(request));
+
+    return new PresignedUrl("PUT", presigned.url().toString(), Date.from(presigned.expiration()));
+  }
+
+  private AwsCredentialsProvider getCredentialsProvider() {
+    if ("static".equalsIgnoreCase(credentialsType)
+        && accessKeyId.isPresent()
+        && secretAccessKey.isPresent()) {
+      return StaticCredentialsProvider.create(
+          AwsBasicCredentials.create(accessKeyId.get(), secretAccessKey.get()));
+    }
+
+    return DefaultCredentialsProvider.create();
+  }
+}
@@ -14,7 +14,7 @@ public class AttachmentRepository implements RepositoryBase<AttachmentEntity> {
   MutinyEmitter<AttachmentEntity> createEmitter;
 
   @Channel("attachment-delete")
-  MutinyEmitter<String> deleteEmitter;
+  MutinyEmitter<AttachmentNotification> deleteEmitter;
 
   @Override
   public String getMeterPrefix() {
@@ -33,6 +33,6 @@ public class AttachmentRepository implements RepositoryBase<AttachmentEntity> {
 
   @Override
   public Uni<Void> notifyDelete(AttachmentEntity entity) {
-    return deleteEmitter.send(entity.id);
+    return deleteEmitter.send(new AttachmentNotification(entity));
   }
 }
@@ -16,9 +16,11 @@ import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HEAD;
 import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
@@ -26,18 +28,22 @@ import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.UriInfo;
-import java.io.File;
-import java.io.FileInputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.regex.Pattern;
-import org.apache.tika.Tika;
 import org.apache.tika.mime.MimeType;
-import org.apache.tika.mime.MimeTypes;
+import org.bson.Document;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.headers.Header;
@@ -47,14 +53,21 @@ import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+import org.jboss.resteasy.reactive.PathPart;
+import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.reactivestreams.Publisher;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
-import software.amazon.awssdk.services.s3.model.BucketAlreadyExistsException;
-import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 @Path("/api/attachment")
 @Tag(ref = "Attachment API")
@@ -62,13 +75,34 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
 
   @Inject S3AsyncClient s3;
 
+  @Inject BucketRegistry buckets;
+
+  @Inject MimeTypeDetector mimeTypeDetector;
+
+  @Inject AttachmentBlobStore blobStore;
+
+  @Inject AttachmentPresigner presigner;
+
+  @Inject PendingUploadRepository pendingRepository;
+
+  @Inject AttachmentContentCache cache;
+
+  @Inject
   public AttachmentResource(HttpHeaders headers, @Context UriInfo uriInfo, Request request) {
     init(headers, uriInfo, request);
   }
 
+  /** A resource called in-process, see {@link AttachmentLocalService}. */
+  AttachmentResource() {}
+
   private final SimpleDateFormat headerDateFormat =
       new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
 
+  @Override
+  protected boolean useRawJson() {
+    return true;
+  }
+
   @GET
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.APPLICATION_JSON)
@@ -85,7 +119,11 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
       """)
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -113,7 +151,7 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
               mediaType = MediaType.SERVER_SENT_EVENTS,
               schema = @Schema(implementation = Attachment.class)))
   @Override
-  public Multi<Map<String, Object>> stream() {
+  public Multi<Object> stream() {
     return super.stream();
   }
 
@@ -156,22 +194,43 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
       throw new BadRequestException("The filename is required.");
     }
 
-    var mimeType = getMimeType(data.file, filename);
-    var ext = mimeType.getExtension();
+    var id = UUID.randomUUID().toString();
+    var size = data.file.length();
 
-    checkMimeType(mimeType, allowedMimeType);
+    return mimeTypeDetector
+        .detect(data.file, filename)
+        .chain(
+            mimeType -> {
+              checkMimeType(mimeType, allowedMimeType);
 
-    if (!filename.endsWith(ext)) {
-      filename += ext;
-    }
+              var name = filename;
+              if (!name.endsWith(mimeType.getExtension())) {
+                name += mimeType.getExtension();
+              }
 
-    data.attachment.put("mimeType", mimeType.getName());
-    data.attachment.put("size", data.file.length());
-    data.attachment.put("name", filename);
+              data.attachment.put("mimeType", mimeType.getName());
+              data.attachment.put("size", size);
+              data.attachment.put("name", name);
 
-    return repository
-        .persistAndNotify(data.attachment, clientId)
-        .chain(t -> putObject(data, t.id).replaceWith(t))
+              return blobStore.hash(data.file);
+            })
+        .chain(
+            hash ->
+                blobStore
+                    .store(clientId, hash, id, size, () -> putObject(data, id))
+                    .chain(
+                        key ->
+                            repository
+                                .persistAndNotify(
+                                    data.attachment,
+                                    clientId,
+                                    e -> {
+                                      e.id = id;
+                                      e.contentHash = hash;
+                                      e.contentKey = key;
+                                    })
+                                .onFailure()
+                                .call(() -> blobStore.release(clientId, hash))))
         .map(AttachmentEntity::toMap)
         .map(t -> Response.status(Response.Status.CREATED).entity(t).build());
   }
@@ -227,27 +286,277 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
   @APIResponse(ref = "error-501")
   @APIResponse(ref = "error-502")
   @APIResponse(ref = "error-503")
+  @APIResponse(
+      responseCode = "307",
+      description = "Redirection to the presigned URL of the attachment.")
+  @Parameter(ref = "X-Client-Id")
+  @Parameter(
+      name = "presigned",
+      description =
+          """
+        Get a short-lived URL of the content instead of the content itself, if enabled:
+
+        * `redirect`: redirect to the URL.
+        * `json`: return the URL as a `PresignedUrl`.
+        """,
+      schema =
+          @Schema(
+              type = SchemaType.STRING,
+              enumeration = {"redirect", "json"}))
+  @Parameter(
+      name = "variant",
+      description =
+          """
+        Get a smaller JPEG version of an image, if generated:
+
+        * `preview`: at most 1024 pixels wide and high.
+        * `thumb`: at most 256 pixels wide and high.
+        """,
+      schema =
+          @Schema(
+              type = SchemaType.STRING,
+              enumeration = {"preview", "thumb"}))
+  public Uni<Response> download(UUID id, @RestQuery String presigned, @RestQuery String variant) {
+    var v = variant == null || variant.isBlank() ? null : AttachmentVariants.Variant.parse(variant);
+
+    if (presigned == null || presigned.isBlank()) {
+      return getEntityById(id).chain(e -> getObject(e, v));
+    }
+
+    if (!presigner.isEnabled()) {
+      throw new WebApplicationException("Presigned URLs are disabled.", 501);
+    }
+
+    if (!"redirect".equals(presigned) && !"json".equals(presigned)) {
+      throw new BadRequestException("Invalid presigned mode. Allowed: redirect, json");
+    }
+
+    return getEntityById(id)
+        .map(
+            e ->
+                v == null
+                    ? presigner.get(clientId, e.objectKey(), e.name, e.mimeType)
+                    : presigner.get(
+                        clientId, v.key(e.objectKey()), e.name, AttachmentVariants.MIME_TYPE))
+        .map(
+            url ->
+                "redirect".equals(presigned)
+                    ? Response.temporaryRedirect(URI.create(url.url)).build()
+                    : Response.ok(url).build());
+  }
+
+  @POST
+  @Path("presigned")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  @Operation(
+      summary = "Start the upload of an attachment to a presigned URL.",
+      description =
+          """
+      The first step of an upload which does not go through the API:
+
+      1. This endpoint returns a short-lived URL.
+      2. The client sends the content to the URL with a `PUT`.
+      3. The client confirms the upload with `POST /api/attachment/presigned/{id}`,
+         which creates the attachment.
+
+      An upload which is not confirmed before the expiration of the URL can not be confirmed
+      anymore, its content is later deleted by a lifecycle rule of the bucket.
+      """)
+  @APIResponse(
+      responseCode = "201",
+      description = "The URL to send the content to.",
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(implementation = PresignedUrl.class)))
+  @APIResponse(ref = "error-400")
+  @APIResponse(ref = "error-501")
+  @Parameter(ref = "X-Client-Id")
+  @RequestBody(content = @Content(schema = @Schema(implementation = Attachment.class)))
+  public Uni<Response> createPresigned(Map<String, Object> attachment) {
+    if (!presigner.isEnabled()) {
+      throw new WebApplicationException("Presigned URLs are disabled.", 501);
+    }
+
+    var filename = attachment.get("name");
+    if (filename == null || String.valueOf(filename).isBlank()) {
+      throw new BadRequestException("The filename is required.");
+    }
+
+    var pending = new PendingUpload();
+    pending.id = UUID.randomUUID().toString();
+    pending.domain = clientId;
+    pending.attachment = new Document(attachment);
+    pending.expiresAt = Date.from(Instant.now().plus(presigner.getDuration()));
+
+    return buckets
+        .get(clientId)
+        .chain(() -> pendingRepository.persist(pending))
+        .map(
+            p -> {
+              var url = presigner.put(clientId, p.contentKey());
+              url.id = p.id;
+              return Response.status(Response.Status.CREATED).entity(url).build();
+            });
+  }
+
+  @POST
+  @Path("presigned/{id}")
+  @Produces(MediaType.APPLICATION_JSON)
+  @Operation(
+      summary = "Confirm the upload of an attachment to a presigned URL.",
+      description =
+          """
+      Create the attachment once its content is sent to the presigned URL.
+
+      The MIME type of the content is checked like for a direct upload. The confirmation fails
+      if the content is sent again while it is checked.
+      """)
+  @APIResponse(
+      responseCode = "201",
+      description = "The attachment has been created.",
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(implementation = Attachment.class)))
+  @APIResponse(ref = "error-400")
+  @APIResponse(ref = "error-404")
+  @APIResponse(
+      responseCode = "409",
+      description = "The upload is already being confirmed, or its content has changed.")
   @Parameter(ref = "X-Client-Id")
-  public Uni<Response> download(UUID id) {
-    return getEntityById(id).chain(this::getObject);
+  @Parameter(ref = "X-Allowed-MimeType")
+  public Uni<Response> confirmPresigned(
+      UUID id, @HeaderParam("X-Allowed-MimeType") String allowedMimeType) {
+    return pendingRepository
+        .claim(id.toString(), clientId)
+        .onItem()
+        .ifNull()
+        .switchTo(() -> notClaimed(id.toString()))
+        .chain(
+            p ->
+                confirm(p, allowedMimeType).onFailure().call(() -> pendingRepository.release(p.id)))
+        .map(AttachmentEntity::toMap)
+        .map(t -> Response.status(Response.Status.CREATED).entity(t).build());
+  }
+
+  /** Fail the confirmation of an upload which can not be claimed. */
+  private Uni<PendingUpload> notClaimed(String id) {
+    return pendingRepository
+        .findById(id)
+        .map(
+            p -> {
+              if (p == null || !clientId.equals(p.domain)) {
+                throw new NotFoundException("Ressource not found");
+              }
+
+              throw new WebApplicationException(
+                  "The upload is already being confirmed.", Response.Status.CONFLICT);
+            });
   }
 
-  private Uni<Void> getBucket(String domain) {
-    var bucketRequest = CreateBucketRequest.builder().bucket(domain).build();
+  private Uni<AttachmentEntity> confirm(PendingUpload pending, String allowedMimeType) {
+    var data = new HashMap<String, Object>(pending.attachment);
+    var filename = String.valueOf(data.get("name"));
+    var key = pending.contentKey();
 
+    var headRequest = HeadObjectRequest.builder().bucket(clientId).key(key).build();
+
+    // the presigned URL is still valid: the content checked is the one moved, or nothing is
     return Uni.createFrom()
-        .completionStage(() -> s3.createBucket(bucketRequest))
-        .onFailure(BucketAlreadyExistsException.class)
-        .recoverWithNull()
+        .completionStage(() -> s3.headObject(headRequest))
+        .onFailure(NoSuchKeyException.class)
+        .transform(t -> new BadRequestException("The content has not been uploaded."))
+        .chain(
+            head ->
+                (head.contentLength() == 0
+                        ? Uni.createFrom().item(new byte[0])
+                        : Uni.createFrom()
+                            .completionStage(
+                                () ->
+                                    s3.getObject(
+                                        sniffRequest(key, head.eTag()),
+                                        AsyncResponseTransformer.toBytes()))
+                            .map(b -> b.asByteArray()))
+                    .chain(b -> mimeTypeDetector.detect(b, filename))
+                    .invoke(mimeType -> checkMimeType(mimeType, allowedMimeType))
+                    .onFailure(BadRequestException.class)
+                    .call(() -> deleteObject(key))
+                    .chain(
+                        mimeType -> {
+                          var name = filename;
+                          if (!name.endsWith(mimeType.getExtension())) {
+                            name += mimeType.getExtension();
+                          }
+
+                          data.put("mimeType", mimeType.getName());
+                          data.put("size", head.contentLength());
+                          data.put("name", name);
+
+                          return moveObject(key, head.eTag(), pending.id, mimeType.getName());
+                        }))
+        .onFailure(t -> t instanceof S3Exception e && e.statusCode() == 412)
+        .transform(
+            t ->
+                new WebApplicationException(
+                    "The content has changed during the confirmation.", Response.Status.CONFLICT))
+        .chain(() -> repository.persistAndNotify(data, clientId, e -> e.id = pending.id))
+        .call(() -> pendingRepository.deleteById(pending.id));
+  }
+
+  /** The first bytes of a pending content, if it is still the given version. */
+  private GetObjectRequest sniffRequest(String key, String eTag) {
+    return GetObjectRequest.builder()
+        .bucket(clientId)
+        .key(key)
+        .ifMatch(eTag)
+        .range("bytes=0-" + (mimeTypeDetector.getSniffSize() - 1))
+        .build();
+  }
+
+  /**
+   * Move a content within the bucket of the client, without going through the API.
+   *
+   * @param source
+   * @param eTag The version of the source to move, the move failing with a 412 if it has changed
+   * @param destination
+   * @param mimeType
+   */
+  private Uni<Void> moveObject(String source, String eTag, String destination, String mimeType) {
+    var copyRequest =
+        CopyObjectRequest.builder()
+            .sourceBucket(clientId)
+            .sourceKey(source)
+            .copySourceIfMatch(eTag)
+            .destinationBucket(clientId)
+            .destinationKey(destination)
+            .contentType(mimeType)
+            .metadataDirective(MetadataDirective.REPLACE)
+            .build();
+
+    return Uni.createFrom()
+        .completionStage(() -> s3.copyObject(copyRequest))
+        .chain(() -> deleteObject(source));
+  }
+
+  private Uni<Void> deleteObject(String key) {
+    var deleteRequest = DeleteObjectRequest.builder().bucket(clientId).key(key).build();
+
+    return Uni.createFrom()
+        .completionStage(() -> s3.deleteObject(deleteRequest))
         .onFailure()
-        .invoke(t -> Log.fatal("Bucket " + domain + " does not exists", t))
+        .invoke(t -> Log.error("Object " + key + " not deleted", t))
+        .onFailure()
+        .recoverWithNull()
         .replaceWithVoid();
   }
 
   private Uni<Void> putObject(AttachmentFormData data, String id) {
     var putRequest = PutObjectRequest.builder().bucket(clientId).key(id).build();
 
-    return getBucket(clientId)
+    return buckets
+        .get(clientId)
         .chain(
             () ->
                 Uni.createFrom()
@@ -258,22 +567,28 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
         .replaceWithVoid();
   }
 
-  private Uni<Response> getObject(AttachmentEntity entity) {
-    ResponseBuilder response = Response.status(Response.Status.OK);
-
-    var requestBuilder = GetObjectRequest.builder().bucket(clientId).key(entity.id);
-
-    var ifMatch = headers.getHeaderString("If-Match");
+  /**
+   * Send the content of an attachment.
+   *
+   * @param entity
+   * @param variant The version of an image to send, {@code null} for the content itself
+   */
+  private Uni<Response> getObject(AttachmentEntity entity, AttachmentVariants.Variant variant) {
+    var key = variant == null ? entity.objectKey() : variant.key(entity.objectKey());
+    var mimeType = variant == null ? entity.mimeType : AttachmentVariants.MIME_TYPE;
+    var requestBuilder = GetObjectRequest.builder().bucket(clientId).key(key);
+
+    var ifMatch = getHeader("If-Match");
     if (ifMatch != null && !ifMatch.isBlank()) {
       requestBuilder.ifMatch(ifMatch);
     }
 
-    var ifNoneMatch = headers.getHeaderString("If-None-Match");
+    var ifNoneMatch = getHeader("If-None-Match");
     if (ifNoneMatch != null && !ifNoneMatch.isBlank()) {
       requestBuilder.ifNoneMatch(ifNoneMatch);
     }
 
-    var ifModifiedSince = headers.getHeaderString("If-Modified-Since");
+    var ifModifiedSince = getHeader("If-Modified-Since");
     if (ifModifiedSince != null && !ifModifiedSince.isBlank()) {
       try {
         var d = headerDateFormat.parse(ifModifiedSince);
@@ -283,7 +598,7 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
       }
     }
 
-    var ifUnmodifiedSince = headers.getHeaderString("If-Unmodified-Since");
+    var ifUnmodifiedSince = getHeader("If-Unmodified-Since");
     if (ifUnmodifiedSince != null && !ifUnmodifiedSince.isBlank()) {
       try {
         var d = headerDateFormat.parse(ifUnmodifiedSince);
@@ -293,35 +608,187 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
       }
     }
 
+    // the size is unknown for the attachments created before it was stored, and for the variants
+    var size = variant == null ? entity.size : 0;
+    var ranges =
+        size > 0 ? ByteRange.parse(getHeader("Range"), size) : Optional.<List<ByteRange>>empty();
+
+    if (ranges.isPresent() && ranges.get().isEmpty()) {
+      return Uni.createFrom()
+          .item(
+              Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                  .header("Content-Range", "bytes */" + size)
+                  .header("Accept-Ranges", "bytes")
+                  .build());
+    }
+
+    // the dates are only checked by S3, as the multiple ranges
+    if (cache.isEnabled()
+        && ifModifiedSince == null
+        && ifUnmodifiedSince == null
+        && (ranges.isEmpty() || ranges.get().size() == 1)) {
+      var cached = cache.get(clientId, key, size);
+      if (cached.isPresent()) {
+        return Uni.createFrom().item(getCachedObject(entity, mimeType, cached.get(), ranges));
+      }
+    }
+
+    if (ranges.isPresent()) {
+      requestBuilder.range(ranges.get().get(0).toRangeHeader());
+    }
+
     return Uni.createFrom()
         .completionStage(
-            () -> s3.getObject(requestBuilder.build(), AsyncResponseTransformer.toBytes()))
+            () -> s3.getObject(requestBuilder.build(), AsyncResponseTransformer.toPublisher()))
         .onFailure()
         .invoke(t -> Log.error("Attachment " + entity.id + " not found", t))
+        .onFailure(NoSuchKeyException.class)
+        .transform(t -> new NotFoundException("Content not found"))
         .map(
-            o ->
-                response
-                    .entity(o.asByteArray())
-                    .header("Content-Disposition", "attachment; filename=\"" + entity.name + "\"")
-                    .header("Content-Type", entity.payload.get("mimeType"))
-                    .header("Last-Modified", o.response().lastModified().toString())
-                    .header("ETag", o.response().eTag())
-                    .header("Content-Length", String.valueOf(o.response().contentLength()))
-                    .build());
+            o -> {
+              ResponseBuilder response;
+              ContentStream content;
+
+              if (ranges.isEmpty()) {
+                response = Response.status(Response.Status.OK);
+                content = new ContentStream(o, o.response().contentLength());
+              } else if (ranges.get().size() == 1) {
+                var range = ranges.get().get(0);
+                response =
+                    Response.status(Response.Status.PARTIAL_CONTENT)
+                        .header("Content-Range", range.toContentRange(size));
+                content = new ContentStream(o, range.length());
+              } else {
+                var boundary = UUID.randomUUID().toString();
+                response =
+                    Response.status(Response.Status.PARTIAL_CONTENT)
+                        .type("multipart/byteranges; boundary=" + boundary);
+                content = getRanges(entity, ranges.get(), o, o.response().eTag(), boundary);
+              }
+
+              if (!ranges.isPresent() || ranges.get().size() == 1) {
+                response.type(mimeType);
+              }
+
+              return response
+                  .entity(content)
+                  .header("Content-Disposition", "attachment; filename=\"" + entity.name + "\"")
+                  .header("Accept-Ranges", "bytes")
+                  .header("Last-Modified", o.response().lastModified().toString())
+                  .header("ETag", o.response().eTag())
+                  .header("Content-Length", String.valueOf(content.length()))
+                  .build();
+            });
+  }
+
+  /** Send the copy of a content from the local disk, with {@code sendfile}. */
+  private Response getCachedObject(
+      AttachmentEntity entity,
+      String mimeType,
+      AttachmentContentCache.Entry cached,
+      Optional<List<ByteRange>> ranges) {
+    var ifMatch = getHeader("If-Match");
+    if (ifMatch != null && !ifMatch.isBlank() && !matchesETag(ifMatch, cached.eTag())) {
+      return Response.status(Response.Status.PRECONDITION_FAILED).build();
+    }
+
+    var ifNoneMatch = getHeader("If-None-Match");
+    if (ifNoneMatch != null && !ifNoneMatch.isBlank() && matchesETag(ifNoneMatch, cached.eTag())) {
+      return Response.notModified().header("ETag", cached.eTag()).build();
+    }
+
+    ResponseBuilder response;
+    PathPart content;
+
+    if (ranges.isEmpty()) {
+      response = Response.status(Response.Status.OK);
+      content = new PathPart(cached.path(), 0, cached.size());
+    } else {
+      var range = ranges.get().get(0);
+      response =
+          Response.status(Response.Status.PARTIAL_CONTENT)
+              .header("Content-Range", range.toContentRange(cached.size()));
+      content = new PathPart(cached.path(), range.start(), range.length());
+    }
+
+    cache.served(content.count);
+
+    return response
+        .entity(content)
+        .type(mimeType)
+        .header("Content-Disposition", "attachment; filename=\"" + entity.name + "\"")
+        .header("Accept-Ranges", "bytes")
+        .header("Last-Modified", cached.lastModified().toString())
+        .header("ETag", cached.eTag())
+        .header("Content-Length", String.valueOf(content.count))
+        .build();
   }
 
-  private MimeType getMimeType(File file, String name) {
-    try (var fileStream = new FileInputStream(file)) {
-      var type = new Tika().detect(fileStream, name);
-      MimeTypes.getDefaultMimeTypes().forName(type).getName();
-      return MimeTypes.getDefaultMimeTypes().forName(type);
-    } catch (Exception e) {
-      Log.error("Unable to find mimetype", e);
-      throw new BadRequestException("Unable to find mimetype");
+  /** If an {@code If-Match} or {@code If-None-Match} header matches an ETag. */
+  private static boolean matchesETag(String header, String eTag) {
+    for (var tag : header.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+
+      if (tag.equals("*") || tag.equals(eTag)) {
+        return true;
+      }
     }
+
+    return false;
+  }
+
+  /**
+   * Build a {@code multipart/byteranges} body. The first range is already fetched, the next ones
+   * are fetched when they are written, on the same version of the object.
+   */
+  private ContentStream getRanges(
+      AttachmentEntity entity,
+      List<ByteRange> ranges,
+      Publisher<ByteBuffer> first,
+      String eTag,
+      String boundary) {
+    var segments = new ArrayList<ContentStream.Segment>();
+    var length = 0L;
+
+    for (var range : ranges) {
+      var header =
+          ("\r\n--"
+                  + boundary
+                  + "\r\nContent-Type: "
+                  + entity.mimeType
+                  + "\r\nContent-Range: "
+                  + range.toContentRange(entity.size)
+                  + "\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII);
+
+      segments.add(ContentStream.Segment.of(header));
+      length += header.length + range.length();
+
+      if (segments.size() == 1) {
+        segments.add(ContentStream.Segment.of(first));
+        continue;
+      }
+
+      var request =
+          GetObjectRequest.builder()
+              .bucket(clientId)
+              .key(entity.objectKey())
+              .ifMatch(eTag)
+              .range(range.toRangeHeader())
+              .build();
+      segments.add(() -> s3.getObject(request, AsyncResponseTransformer.toPublisher()));
+    }
+
+    var end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    segments.add(ContentStream.Segment.of(end));
+
+    return new ContentStream(segments, length + end.length);
   }
 
-  private void checkMimeType(MimeType mimeType, String allowedMimeTypes) {
+  static void checkMimeType(MimeType mimeType, String allowedMimeTypes) {
     if (allowedMimeTypes == null || allowedMimeTypes.isBlank()) {
       return;
     }
@@ -335,7 +802,7 @@ public class AttachmentResource extends TmfApiBase<AttachmentEntity, AttachmentR
     throw new BadRequestException("Invalid mimetype. Allowed: " + allowedMimeTypes);
   }
 
-  private List<Pattern> getPatterns(String allowedMimeTypes) {
+  private static List<Pattern> getPatterns(String allowedMimeTypes) {
     var patterns = new ArrayList<Pattern>();
     for (var pattern : allowedMimeTypes.split("\\s*;\\s*")) {
       patterns.add(Pattern.compile(pattern));
@@ -15,15 +15,18 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import java.util.UUID;
+import org.eclipse.microprofile.rest.client.annotation.RegisterClientHeaders;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
+@RegisterClientHeaders
 @RegisterRestClient(configKey = "attachmentService")
 @Path("/api/attachment")
-public interface AttachmentService {
+public interface AttachmentService extends AttachmentApi {
 
   @GET
+  @Override
   Uni<Response> list(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
@@ -31,32 +34,48 @@ public interface AttachmentService {
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.SERVER_SENT_EVENTS)
   @RestStreamElementType(MediaType.APPLICATION_JSON)
-  Multi<Response> stream(
+  @Override
+  Multi<Object> stream(
+      @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
+
+  @GET
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.SERVER_SENT_EVENTS)
+  @RestStreamElementType(MediaType.TEXT_PLAIN)
+  @Override
+  Multi<String> streamRaw(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
   @HEAD
+  @Override
   Uni<Response> count(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
   @GET
   @Path("{id}")
+  @Override
   Uni<Response> get(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 
   @GET
   @Path("{id}/content")
+  @Override
   Uni<Response> download(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 
   @POST
   @Consumes(MediaType.MULTIPART_FORM_DATA)
+  @Override
   Uni<Response> create(@HeaderParam("X-Client-Id") String clientId, AttachmentFormData data);
 
   @POST
   @Consumes(MediaType.MULTIPART_FORM_DATA)
+  @Override
   Uni<Response> create(
       @HeaderParam("X-Client-Id") String clientId,
       AttachmentFormData data,
       @HeaderParam("X-Allowed-MimeType") String allowedMimeType);
 
   @DELETE
+  @Path("{id}")
+  @Override
   Uni<Response> delete(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 }
@@ -0,0 +1,512 @@
+package fr.arcep.attachment;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import fr.arcep.tmf.model.Error;
+import fr.arcep.tmf.util.EntitySupport;
+import io.quarkus.logging.Log;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+import org.apache.tika.mime.MimeType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Streaming upload of an attachment: {@code POST /api/attachment/upload}.
+ *
+ * <p>It accepts the same multipart form as {@code POST /api/attachment}, but the file is never
+ * spooled to disk: it is piped into an S3 multipart upload in parts of {@code tmf.upload.part-size}
+ * bytes, the request being paused while a part is sent. The MIME type is detected on the first
+ * {@code tmf.upload.sniff-size} bytes and the size is counted on the fly. A file smaller than a
+ * part is sent with a single put.
+ *
+ * <p>The route runs before the global {@code quarkus.http.limits.max-body-size} check, and bounds
+ * the body with {@code tmf.attachment.upload.max-size} instead: on its {@code Content-Length}
+ * first, then on the bytes of the file.
+ *
+ * <p>The attachment is created once its content is stored, so a failed upload leaves nothing
+ * behind.
+ */
+@ApplicationScoped
+public class AttachmentUploadRoute {
+
+  static final String PATH = "/api/attachment/upload";
+
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+  @Inject S3AsyncClient s3;
+
+  @Inject AttachmentRepository repository;
+
+  @Inject BucketRegistry buckets;
+
+  @Inject MimeTypeDetector mimeTypeDetector;
+
+  @Inject AttachmentBlobStore blobStore;
+
+  /** S3 requires at least 5 MiB for every part but the last one */
+  @ConfigProperty(name = "tmf.upload.part-size", defaultValue = "8388608")
+  int partSize;
+
+  @ConfigProperty(name = "tmf.upload.sniff-size", defaultValue = "65536")
+  int sniffSize;
+
+  /** The largest body accepted, in bytes */
+  @ConfigProperty(name = "tmf.attachment.upload.max-size", defaultValue = "268435456")
+  long maxSize;
+
+  void init(@Observes Router router) {
+    // before the body size limit of Quarkus (-2) and the REST endpoints, which would spool the body
+    router.post(PATH).order(-3).handler(this::upload);
+  }
+
+  void upload(RoutingContext ctx) {
+    var request = ctx.request();
+
+    var clientId = request.getHeader("X-Client-Id");
+    if (clientId == null || clientId.isBlank()) {
+      reply(request, 401, "You are not authorized to access this resource");
+      return;
+    }
+
+    var contentType = request.getHeader(HttpHeaders.CONTENT_TYPE);
+    if (contentType == null
+        || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+      reply(request, 415, "The body must be multipart/form-data");
+      return;
+    }
+
+    var contentLength = request.getHeader(HttpHeaders.CONTENT_LENGTH);
+    if (contentLength != null && parseLength(contentLength) > maxSize) {
+      reply(request, 413, tooLarge());
+      return;
+    }
+
+    new Upload(request, clientId).start();
+  }
+
+  private String tooLarge() {
+    return "The body must not be larger than " + maxSize + " bytes";
+  }
+
+  /** The length of the body, a malformed one being left to the multipart decoder. */
+  private static long parseLength(String contentLength) {
+    try {
+      return Long.parseLong(contentLength.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static void reply(HttpServerRequest request, int status, String reason) {
+    if (request.response().ended()) {
+      return;
+    }
+
+    if (status == 413) {
+      // the rest of the body is not read
+      request.response().putHeader(HttpHeaders.CONNECTION, "close");
+    }
+
+    var error = new Error();
+    error.code = String.valueOf(status);
+    error.message = Response.Status.fromStatusCode(status).getReasonPhrase();
+    error.reason = reason;
+
+    reply(request, status, error);
+  }
+
+  private static void reply(HttpServerRequest request, int status, Object body) {
+    try {
+      request
+          .response()
+          .setStatusCode(status)
+          .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+          .end(Buffer.buffer(EntitySupport.objectMapper().writeValueAsBytes(body)));
+    } catch (Exception e) {
+      Log.error("Unable to write the response", e);
+      request.response().setStatusCode(500).end();
+    }
+  }
+
+  /** The state of one upload, only touched from the context of the request. */
+  private class Upload {
+
+    private final HttpServerRequest request;
+    private final String clientId;
+    private final Context context;
+    private final String id = UUID.randomUUID().toString();
+    private final List<CompletedPart> parts = new ArrayList<>();
+    private final MessageDigest digest = AttachmentBlobStore.newDigest();
+
+    private HttpServerFileUpload file;
+    private Buffer pending = Buffer.buffer();
+    private long size;
+    private MimeType mimeType;
+    private String uploadId;
+    private boolean stored;
+    private boolean failed;
+    private boolean sniffing;
+    private boolean ended;
+
+    /** The S3 operations, chained so a single one is running at a time */
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    Upload(HttpServerRequest request, String clientId) {
+      this.request = request;
+      this.clientId = clientId;
+      this.context = Vertx.currentContext();
+    }
+
+    void start() {
+      request.pause();
+      request.setExpectMultipart(true);
+      request.uploadHandler(this::onFile);
+      request.exceptionHandler(this::fail);
+      request.endHandler(v -> onEnd());
+
+      buckets
+          .get(clientId)
+          .subscribe()
+          .with(v -> context.runOnContext(x -> request.resume()), this::fail);
+    }
+
+    private void onFile(HttpServerFileUpload upload) {
+      if (file != null || !"file".equals(upload.name())) {
+        // only the first file is stored
+        upload.handler(b -> {});
+        return;
+      }
+
+      file = upload;
+      upload.handler(this::onData);
+      upload.exceptionHandler(this::fail);
+    }
+
+    private void onData(Buffer data) {
+      if (failed) {
+        return;
+      }
+
+      size += data.length();
+      if (size > maxSize) {
+        fail(new WebApplicationException(tooLarge(), 413));
+        return;
+      }
+
+      digest.update(data.getByteBuf().nioBuffer());
+      pending.appendBuffer(data);
+
+      if (mimeType == null) {
+        if (!sniffing && pending.length() >= sniffSize) {
+          sniff();
+        }
+        return;
+      }
+
+      sendPart();
+    }
+
+    /**
+     * Send a part once enough bytes are buffered, the file being paused until it is stored.
+     *
+     * @return {@code true} if a part is being sent
+     */
+    private boolean sendPart() {
+      if (pending.length() < partSize) {
+        return false;
+      }
+
+      var part = pending.getBuffer(0, partSize);
+      pending = pending.getBuffer(partSize, pending.length());
+
+      file.pause();
+      then(() -> uploadPart(part))
+          .whenComplete(
+              (v, t) ->
+                  context.runOnContext(
+                      x -> {
+                        if (t != null) {
+                          fail(t);
+                        } else {
+                          file.resume();
+                        }
+                      }));
+      return true;
+    }
+
+    /**
+     * Detect and check the MIME type on the buffered beginning of the file. The file is paused
+     * while the detection runs.
+     */
+    private void sniff() {
+      var prefix = pending.getBytes(0, Math.min(pending.length(), sniffSize));
+
+      sniffing = true;
+      if (!ended) {
+        file.pause();
+      }
+
+      mimeTypeDetector
+          .detect(prefix, getName())
+          .subscribe()
+          .with(
+              type ->
+                  context.runOnContext(
+                      x -> {
+                        if (failed) {
+                          return;
+                        }
+
+                        try {
+                          AttachmentResource.checkMimeType(
+                              type, request.getHeader("X-Allowed-MimeType"));
+                        } catch (WebApplicationException e) {
+                          fail(e);
+                          return;
+                        }
+
+                        mimeType = type;
+                        if (ended) {
+                          finish();
+                        } else if (!sendPart()) {
+                          file.resume();
+                        }
+                      }),
+              t -> context.runOnContext(x -> fail(t)));
+    }
+
+    private void onEnd() {
+      if (failed) {
+        return;
+      }
+
+      ended = true;
+
+      if (file == null) {
+        fail(new WebApplicationException("The file is required.", 400));
+        return;
+      }
+
+      if (mimeType == null) {
+        if (!sniffing) {
+          sniff();
+        }
+        return;
+      }
+
+      finish();
+    }
+
+    /** Store the rest of the file and create the attachment. */
+    private void finish() {
+      Map<String, Object> data;
+      try {
+        var json = request.formAttributes().get("attachment");
+        data = json == null ? null : EntitySupport.objectMapper().readValue(json, MAP_TYPE);
+      } catch (Exception e) {
+        fail(new WebApplicationException("Invalid attachment.", 400));
+        return;
+      }
+
+      var filename = data == null ? null : data.get("name");
+      if (filename == null || String.valueOf(filename).isBlank()) {
+        fail(new WebApplicationException("The filename is required.", 400));
+        return;
+      }
+
+      var name = String.valueOf(filename);
+      if (!name.endsWith(mimeType.getExtension())) {
+        name += mimeType.getExtension();
+      }
+
+      data.put("mimeType", mimeType.getName());
+      data.put("size", size);
+      data.put("name", name);
+
+      var last = pending;
+      var hash = AttachmentBlobStore.toHex(digest);
+      then(() -> uploadId == null ? putObject(last) : uploadPart(last).thenCompose(v -> complete()))
+          .thenCompose(
+              v ->
+                  blobStore
+                      .adopt(clientId, hash, id, size)
+                      // the content now belongs to the blob
+                      .invoke(() -> stored = false)
+                      .chain(
+                          key ->
+                              repository
+                                  .persistAndNotify(
+                                      data,
+                                      clientId,
+                                      e -> {
+                                        e.id = id;
+                                        e.contentHash = hash;
+                                        e.contentKey = key;
+                                      })
+                                  .onFailure()
+                                  .call(() -> blobStore.release(clientId, hash)))
+                      .runSubscriptionOn(r -> context.runOnContext(x -> r.run()))
+                      .subscribeAsCompletionStage())
+          .whenComplete(
+              (entity, t) ->
+                  context.runOnContext(
+                      x -> {
+                        if (t != null) {
+                          fail(t);
+                        } else {
+                          reply(request, 201, entity.toMap());
+                        }
+                      }));
+    }
+
+    private <T> CompletableFuture<T> then(Supplier<CompletionStage<T>> step) {
+      var next = tail.thenCompose(v -> step.get());
+      tail = next.thenApply(v -> null);
+      return next;
+    }
+
+    private String getName() {
+      try {
+        var json = request.formAttributes().get("attachment");
+        if (json != null) {
+          var name = EntitySupport.objectMapper().readValue(json, MAP_TYPE).get("name");
+          if (name != null) {
+            return String.valueOf(name);
+          }
+        }
+      } catch (Exception e) {
+        // the metadata is checked at the end of the request
+      }
+
+      return file == null ? null : file.filename();
+    }
+
+    private CompletionStage<Void> putObject(Buffer content) {
+      var putRequest =
+          PutObjectRequest.builder()
+              .bucket(clientId)
+              .key(id)
+              .contentType(mimeType.getName())
+              .build();
+
+      return s3.putObject(putRequest, AsyncRequestBody.fromBytes(content.getBytes()))
+          .thenRun(() -> stored = true);
+    }
+
+    private CompletionStage<Void> uploadPart(Buffer content) {
+      CompletionStage<Void> created = CompletableFuture.completedFuture(null);
+      if (uploadId == null) {
+        var createRequest =
+            CreateMultipartUploadRequest.builder()
+                .bucket(clientId)
+                .key(id)
+                .contentType(mimeType == null ? null : mimeType.getName())
+                .build();
+        created = s3.createMultipartUpload(createRequest).thenAccept(r -> uploadId = r.uploadId());
+      }
+
+      return created.thenCompose(
+          v -> {
+            var partNumber = parts.size() + 1;
+            var partRequest =
+                UploadPartRequest.builder()
+                    .bucket(clientId)
+                    .key(id)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength((long) content.length())
+                    .build();
+
+            return s3.uploadPart(partRequest, AsyncRequestBody.fromBytes(content.getBytes()))
+                .thenAccept(
+                    r ->
+                        parts.add(
+                            CompletedPart.builder().partNumber(partNumber).eTag(r.eTag()).build()));
+          });
+    }
+
+    private CompletionStage<Void> complete() {
+      var completeRequest =
+          CompleteMultipartUploadRequest.builder()
+              .bucket(clientId)
+              .key(id)
+              .uploadId(uploadId)
+              .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+              .build();
+
+      return s3.completeMultipartUpload(completeRequest).thenRun(() -> stored = true);
+    }
+
+    /** Reply with an error and drop what was already sent to S3. */
+    private void fail(Throwable t) {
+      if (failed) {
+        return;
+      }
+
+      failed = true;
+
+      if (t instanceof CompletionException && t.getCause() != null) {
+        t = t.getCause();
+      }
+
+      if (t instanceof WebApplicationException e) {
+        reply(request, e.getResponse().getStatus(), e.getMessage());
+      } else if (t instanceof ConstraintViolationException e) {
+        reply(request, 400, e.getMessage());
+      } else {
+        Log.error("Attachment " + id + " not uploaded", t);
+        reply(request, 500, "unexpected error");
+      }
+
+      pending = Buffer.buffer();
+      request.resume();
+      tail.whenComplete((v, e) -> cleanup());
+    }
+
+    private void cleanup() {
+      if (stored) {
+        var deleteRequest = DeleteObjectRequest.builder().bucket(clientId).key(id).build();
+        s3.deleteObject(deleteRequest);
+      } else if (uploadId != null) {
+        var abortRequest =
+            AbortMultipartUploadRequest.builder()
+                .bucket(clientId)
+                .key(id)
+                .uploadId(uploadId)
+                .build();
+        s3.abortMultipartUpload(abortRequest);
+      }
+    }
+  }
+}
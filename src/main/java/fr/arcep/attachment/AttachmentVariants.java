@@ -0,0 +1,225 @@
+package fr.arcep.attachment;
+
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.reactive.messaging.annotations.Blocking;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Incoming;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Smaller versions of the image attachments, generated in the background from the {@code
+ * attachment-create} topic and stored as JPEG next to the content, under {@code <key>/<variant>}.
+ *
+ * <p>The images are decoded on the {@code attachment-variants} worker pool, whose size is {@code
+ * smallrye.messaging.worker.attachment-variants.max-concurrency}: the topic is not read faster than
+ * the images are processed, so a burst of uploads waits in Kafka instead of taking the threads of
+ * the API. It is disabled unless {@code tmf.attachment.variants.enabled} is set.
+ */
+@ApplicationScoped
+public class AttachmentVariants {
+
+  public static final String MIME_TYPE = "image/jpeg";
+
+  /** The generated versions, with the maximum size of their longest side */
+  public enum Variant {
+    PREVIEW(1024),
+    THUMB(256);
+
+    final int maxSize;
+
+    Variant(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    /** The key of this version of a content */
+    public String key(String objectKey) {
+      return objectKey + "/" + name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Variant parse(String variant) {
+      for (var v : values()) {
+        if (v.name().equalsIgnoreCase(variant)) {
+          return v;
+        }
+      }
+
+      throw new BadRequestException("Invalid variant. Allowed: preview, thumb");
+    }
+  }
+
+  @Inject S3AsyncClient s3;
+
+  @Inject AttachmentRepository repository;
+
+  @ConfigProperty(name = "tmf.attachment.variants.enabled", defaultValue = "false")
+  boolean enabled;
+
+  /** The larger images are not read */
+  @ConfigProperty(name = "tmf.attachment.variants.max-source-size", defaultValue = "33554432")
+  long maxSourceSize;
+
+  /** The images of more pixels are not decoded */
+  @ConfigProperty(name = "tmf.attachment.variants.max-pixels", defaultValue = "50000000")
+  long maxPixels;
+
+  @Incoming("attachment-variants")
+  @Blocking(value = "attachment-variants", ordered = false)
+  public void onCreate(AttachmentEntity attachment) {
+    if (!enabled
+        || attachment.mimeType == null
+        || !attachment.mimeType.startsWith("image/")
+        || attachment.size > maxSourceSize) {
+      return;
+    }
+
+    // the key of the content is not sent
+    var entity = repository.findById(attachment.id).await().indefinitely();
+    if (entity == null) {
+      Log.debugf("Attachment %s deleted before its variants were generated", attachment.id);
+      return;
+    }
+
+    try {
+      generate(entity.domain, entity.objectKey());
+    } catch (RuntimeException e) {
+      Log.errorf(e, "Variants of attachment %s not generated", entity.id);
+    }
+  }
+
+  /**
+   * Generate the versions of an image, unless they already exist for this content.
+   *
+   * @param domain
+   * @param objectKey The key of the content
+   */
+  void generate(String domain, String objectKey) {
+    if (exists(domain, Variant.THUMB.key(objectKey))) {
+      Log.debugf("Variants of %s already generated", objectKey);
+      return;
+    }
+
+    var getRequest = GetObjectRequest.builder().bucket(domain).key(objectKey).build();
+    var bytes =
+        Uni.createFrom()
+            .completionStage(() -> s3.getObject(getRequest, AsyncResponseTransformer.toBytes()))
+            .await()
+            .indefinitely()
+            .asByteArray();
+
+    var image = read(bytes);
+    if (image == null) {
+      Log.debugf("Attachment %s is not a readable image", objectKey);
+      return;
+    }
+
+    // each version is scaled from the previous one, the largest first
+    for (var variant : Variant.values()) {
+      image = scale(image, variant.maxSize);
+      put(domain, variant.key(objectKey), image);
+    }
+
+    Log.debugf("Variants of %s generated", objectKey);
+  }
+
+  /** Decode an image, subsampled to the size of the largest version. */
+  private BufferedImage read(byte[] bytes) {
+    try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+      var readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        return null;
+      }
+
+      var reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+
+        var width = reader.getWidth(0);
+        var height = reader.getHeight(0);
+        if ((long) width * height > maxPixels) {
+          Log.debugf("Image of %dx%d pixels not decoded", width, height);
+          return null;
+        }
+
+        var step = Math.max(1, Math.max(width, height) / Variant.PREVIEW.maxSize);
+        var param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+
+        return reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException e) {
+      Log.debug("Unable to decode the image", e);
+      return null;
+    }
+  }
+
+  /** Fit an image in a square, without enlarging it. The transparent pixels become white. */
+  private static BufferedImage scale(BufferedImage image, int maxSize) {
+    var ratio = Math.min(1d, (double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+    var width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+    var height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+    var scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+    } finally {
+      graphics.dispose();
+    }
+
+    return scaled;
+  }
+
+  private void put(String domain, String key, BufferedImage image) {
+    var output = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "jpg", output);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    var putRequest =
+        PutObjectRequest.builder().bucket(domain).key(key).contentType(MIME_TYPE).build();
+
+    Uni.createFrom()
+        .completionStage(
+            () -> s3.putObject(putRequest, AsyncRequestBody.fromBytes(output.toByteArray())))
+        .await()
+        .indefinitely();
+  }
+
+  private boolean exists(String domain, String key) {
+    var headRequest = HeadObjectRequest.builder().bucket(domain).key(key).build();
+
+    return Uni.createFrom()
+        .completionStage(() -> s3.headObject(headRequest))
+        .map(r -> true)
+        .onFailure(t -> t instanceof S3Exception e && e.statusCode() == 404)
+        .recoverWithItem(false)
+        .await()
+        .indefinitely();
+  }
+}
@@ -0,0 +1,147 @@
+package fr.arcep.attachment;
+
+import fr.arcep.tmf.util.EntityBase;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyExistsException;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+import software.amazon.awssdk.services.s3.model.BucketLifecycleConfiguration;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.LifecycleExpiration;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.LifecycleRuleFilter;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.PutBucketLifecycleConfigurationRequest;
+
+/**
+ * The buckets of the domains, checked or created once per domain.
+ *
+ * <p>Each bucket gets a lifecycle rule expiring the contents left under the {@code pending/} prefix
+ * by the presigned uploads, which replaces the lifecycle configuration of the bucket. Concurrent
+ * calls for a domain share the same S3 requests. A failure is not cached, so the next call tries
+ * again.
+ */
+@ApplicationScoped
+public class BucketRegistry {
+
+  @Inject S3AsyncClient s3;
+
+  @Inject AttachmentRepository repository;
+
+  /** Check the buckets of the domains which already have attachments on startup */
+  @ConfigProperty(name = "tmf.attachment.bucket-prewarm", defaultValue = "false")
+  boolean prewarm;
+
+  /** The days after which a content sent to a presigned URL is dropped if it is not confirmed */
+  @ConfigProperty(name = "tmf.attachment.presign.pending-expiration-days", defaultValue = "1")
+  int pendingExpirationDays;
+
+  private final Map<String, CompletableFuture<Void>> buckets = new ConcurrentHashMap<>();
+
+  void onStart(@Observes StartupEvent event) {
+    if (!prewarm) {
+      return;
+    }
+
+    repository
+        .mongoCollection()
+        .distinct(EntityBase.DOMAIN_FIELD, String.class)
+        .onItem()
+        .transformToUniAndMerge(this::get)
+        .collect()
+        .last()
+        .subscribe()
+        .with(
+            v -> Log.infof("%d buckets ready", buckets.size()),
+            t -> Log.warn("Unable to prewarm the buckets", t));
+  }
+
+  /**
+   * Make sure the bucket of a domain exists.
+   *
+   * @param domain
+   * @return Completed once the bucket exists
+   */
+  public Uni<Void> get(String domain) {
+    return Uni.createFrom()
+        .deferred(
+            () -> {
+              var future = buckets.computeIfAbsent(domain, this::ensure);
+              // a copy, so a cancelled caller does not cancel the others
+              return Uni.createFrom()
+                  .completionStage(future.copy())
+                  .onFailure()
+                  .invoke(() -> buckets.remove(domain, future));
+            });
+  }
+
+  private CompletableFuture<Void> ensure(String domain) {
+    var headRequest = HeadBucketRequest.builder().bucket(domain).build();
+    var createRequest = CreateBucketRequest.builder().bucket(domain).build();
+
+    return s3.headBucket(headRequest)
+        .<Void>thenApply(r -> null)
+        .exceptionallyCompose(
+            t -> {
+              if (!(unwrap(t) instanceof NoSuchBucketException)) {
+                return CompletableFuture.failedFuture(t);
+              }
+
+              return s3.createBucket(createRequest)
+                  .<Void>thenApply(r -> null)
+                  .exceptionallyCompose(
+                      e ->
+                          unwrap(e) instanceof BucketAlreadyExistsException
+                                  || unwrap(e) instanceof BucketAlreadyOwnedByYouException
+                              ? CompletableFuture.completedFuture(null)
+                              : CompletableFuture.failedFuture(e));
+            })
+        .thenCompose(v -> expirePending(domain))
+        .whenComplete(
+            (v, t) -> {
+              if (t != null) {
+                Log.fatal("Bucket " + domain + " does not exists", t);
+              }
+            });
+  }
+
+  /** Drop the pending contents, confirmed or not, without failing the bucket if it can not. */
+  private CompletableFuture<Void> expirePending(String domain) {
+    var rule =
+        LifecycleRule.builder()
+            .id("pending-uploads")
+            .filter(LifecycleRuleFilter.builder().prefix(PendingUpload.PREFIX).build())
+            .expiration(LifecycleExpiration.builder().days(pendingExpirationDays).build())
+            .status(ExpirationStatus.ENABLED)
+            .build();
+    var lifecycleRequest =
+        PutBucketLifecycleConfigurationRequest.builder()
+            .bucket(domain)
+            .lifecycleConfiguration(BucketLifecycleConfiguration.builder().rules(rule).build())
+            .build();
+
+    return s3.putBucketLifecycleConfiguration(lifecycleRequest)
+        .<Void>thenApply(r -> null)
+        .exceptionally(
+            t -> {
+              Log.warn("The pending uploads of the bucket " + domain + " do not expire", t);
+              return null;
+            });
+  }
+
+  private static Throwable unwrap(Throwable t) {
+    return t.getCause() != null && t instanceof CompletionException ? t.getCause() : t;
+  }
+}
@@ -0,0 +1,119 @@
+package fr.arcep.attachment;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * A satisfiable range of bytes of an attachment, from {@code start} to {@code end} inclusive.
+ *
+ * @param start
+ * @param end
+ */
+record ByteRange(long start, long end) {
+
+  /** More ranges than this are ignored, the whole content is cheaper to send */
+  static final int MAX_RANGES = 16;
+
+  private static final String UNIT = "bytes=";
+
+  long length() {
+    return end - start + 1;
+  }
+
+  /** The value of the {@code Range} header of the S3 request */
+  String toRangeHeader() {
+    return UNIT + start + "-" + end;
+  }
+
+  /** The value of the {@code Content-Range} header of the response */
+  String toContentRange(long size) {
+    return "bytes " + start + "-" + end + "/" + size;
+  }
+
+  /**
+   * Parse a {@code Range} header.
+   *
+   * @param header The header, e.g. {@code bytes=0-99, 200-, -50}
+   * @param size The size of the content
+   * @return The satisfiable ranges, sorted and with the overlapping or adjacent ones merged, empty
+   *     if none is satisfiable, or {@link Optional#empty()} if the header must be ignored because
+   *     it is missing, invalid or has too many ranges
+   */
+  static Optional<List<ByteRange>> parse(String header, long size) {
+    if (header == null || !header.toLowerCase(Locale.ROOT).startsWith(UNIT)) {
+      return Optional.empty();
+    }
+
+    var specs = header.substring(UNIT.length()).split(",");
+    if (specs.length > MAX_RANGES) {
+      return Optional.empty();
+    }
+
+    var ranges = new ArrayList<ByteRange>();
+    for (var spec : specs) {
+      spec = spec.trim();
+      var dash = spec.indexOf('-');
+      if (dash < 0) {
+        return Optional.empty();
+      }
+
+      long start;
+      long end;
+      try {
+        if (dash == 0) {
+          // the last n bytes
+          var suffix = Long.parseLong(spec.substring(1));
+          if (suffix < 0) {
+            return Optional.empty();
+          }
+
+          start = Math.max(0, size - suffix);
+          end = suffix == 0 ? -1 : size - 1;
+        } else {
+          start = Long.parseLong(spec.substring(0, dash));
+          end =
+              dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+          if (start < 0 || end < start) {
+            return Optional.empty();
+          }
+
+          end = Math.min(end, size - 1);
+        }
+      } catch (NumberFormatException e) {
+        return Optional.empty();
+      }
+
+      if (start < size && start <= end) {
+        ranges.add(new ByteRange(start, end));
+      }
+    }
+
+    return Optional.of(merge(ranges));
+  }
+
+  /** Merge the overlapping and adjacent ranges, so no byte is sent twice. */
+  private static List<ByteRange> merge(List<ByteRange> ranges) {
+    if (ranges.size() < 2) {
+      return ranges;
+    }
+
+    ranges.sort(Comparator.comparingLong(ByteRange::start));
+
+    var merged = new ArrayList<ByteRange>();
+    var current = ranges.get(0);
+    for (var range : ranges.subList(1, ranges.size())) {
+      if (range.start() <= current.end() + 1) {
+        current = new ByteRange(current.start(), Math.max(current.end(), range.end()));
+      } else {
+        merged.add(current);
+        current = range;
+      }
+    }
+    merged.add(current);
+
+    return merged;
+  }
+}
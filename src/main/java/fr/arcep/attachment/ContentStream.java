@@ -0,0 +1,56 @@
+package fr.arcep.attachment;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+/**
+ * The content of an attachment, streamed to the client by {@link ContentStreamWriter} as it is read
+ * from the storage.
+ *
+ * @param segments The parts of the content, written one after the other
+ * @param length The length of the content, or a negative value if it is unknown
+ */
+public record ContentStream(List<Segment> segments, long length) {
+
+  public ContentStream(Publisher<ByteBuffer> content, long length) {
+    this(List.of(Segment.of(content)), length);
+  }
+
+  /** A part of the content, only opened once the previous one is written. */
+  @FunctionalInterface
+  public interface Segment {
+
+    CompletionStage<? extends Publisher<ByteBuffer>> open();
+
+    static Segment of(Publisher<ByteBuffer> content) {
+      return () -> CompletableFuture.completedFuture(content);
+    }
+
+    static Segment of(byte[] bytes) {
+      return of(
+          subscriber ->
+              subscriber.onSubscribe(
+                  new Subscription() {
+                    private boolean done;
+
+                    @Override
+                    public void request(long n) {
+                      if (!done && n > 0) {
+                        done = true;
+                        subscriber.onNext(ByteBuffer.wrap(bytes));
+                        subscriber.onComplete();
+                      }
+                    }
+
+                    @Override
+                    public void cancel() {
+                      done = true;
+                    }
+                  }));
+    }
+  }
+}
@@ -0,0 +1,305 @@
+package fr.arcep.attachment;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.jboss.resteasy.reactive.server.core.ResteasyReactiveRequestContext;
+import org.jboss.resteasy.reactive.server.spi.ResteasyReactiveResourceInfo;
+import org.jboss.resteasy.reactive.server.spi.ServerHttpResponse;
+import org.jboss.resteasy.reactive.server.spi.ServerMessageBodyWriter;
+import org.jboss.resteasy.reactive.server.spi.ServerRequestContext;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Write a {@link ContentStream} to the response with backpressure.
+ *
+ * <p>The segments are written one after the other. At most {@link #PREFETCH} chunks are requested
+ * ahead from the current one, and no more are requested while the write queue of the connection is
+ * full. So the memory used by a download does not depend on the size of the content.
+ */
+@Provider
+public class ContentStreamWriter implements ServerMessageBodyWriter<ContentStream> {
+
+  static final int PREFETCH = 4;
+
+  @Override
+  public boolean isWriteable(
+      Class<?> type, Type genericType, ResteasyReactiveResourceInfo target, MediaType mediaType) {
+    return ContentStream.class.isAssignableFrom(type);
+  }
+
+  @Override
+  public boolean isWriteable(
+      Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return ContentStream.class.isAssignableFrom(type);
+  }
+
+  @Override
+  public void writeResponse(ContentStream stream, Type genericType, ServerRequestContext context)
+      throws WebApplicationException {
+    var requestContext = (ResteasyReactiveRequestContext) context;
+    requestContext.suspend();
+
+    var response = context.serverResponse();
+    if (stream.length() >= 0) {
+      response.setResponseHeader("Content-Length", String.valueOf(stream.length()));
+    } else {
+      response.setChunked(true);
+    }
+
+    new ChunkSubscriber(requestContext, response, Vertx.currentContext(), stream.segments()).next();
+  }
+
+  /** Copy the segments to the stream, blocking the calling thread until they are written. */
+  @Override
+  public void writeTo(
+      ContentStream stream,
+      Class<?> type,
+      Type genericType,
+      Annotation[] annotations,
+      MediaType mediaType,
+      MultivaluedMap<String, Object> httpHeaders,
+      OutputStream entityStream)
+      throws IOException {
+    for (var segment : stream.segments()) {
+      Publisher<ByteBuffer> content;
+      try {
+        content = segment.open().toCompletableFuture().join();
+      } catch (CompletionException e) {
+        throw new IOException("Unable to open the content", e.getCause());
+      }
+
+      var subscriber = new BlockingSubscriber();
+      content.subscribe(subscriber);
+      subscriber.copyTo(entityStream);
+    }
+
+    entityStream.flush();
+  }
+
+  /** Hand the chunks to the writing thread, at most {@link #PREFETCH} at a time. */
+  private static class BlockingSubscriber implements Subscriber<ByteBuffer> {
+
+    private static final Object COMPLETE = new Object();
+
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Subscription> subscription = new CompletableFuture<>();
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      subscription.complete(s);
+      s.request(PREFETCH);
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+      signals.add(chunk);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      signals.add(t);
+    }
+
+    @Override
+    public void onComplete() {
+      signals.add(COMPLETE);
+    }
+
+    void copyTo(OutputStream output) throws IOException {
+      var buffer = new byte[8192];
+      try {
+        while (true) {
+          var signal = signals.take();
+          if (signal == COMPLETE) {
+            return;
+          }
+
+          if (signal instanceof Throwable t) {
+            throw new IOException("Unable to read the content", t);
+          }
+
+          var chunk = (ByteBuffer) signal;
+          while (chunk.hasRemaining()) {
+            var length = Math.min(chunk.remaining(), buffer.length);
+            chunk.get(buffer, 0, length);
+            output.write(buffer, 0, length);
+          }
+
+          subscription.join().request(1);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+        throw new InterruptedIOException();
+      } catch (IOException | RuntimeException e) {
+        cancel();
+        throw e;
+      }
+    }
+
+    private void cancel() {
+      var s = subscription.getNow(null);
+      if (s != null) {
+        s.cancel();
+      }
+    }
+  }
+
+  /** Forward the chunks of the segments to the response, on the context of the request. */
+  private static class ChunkSubscriber implements Subscriber<ByteBuffer> {
+
+    private final ResteasyReactiveRequestContext requestContext;
+    private final ServerHttpResponse response;
+    private final Context context;
+    private final Iterator<ContentStream.Segment> segments;
+    private Subscription subscription;
+    private boolean done;
+
+    ChunkSubscriber(
+        ResteasyReactiveRequestContext requestContext,
+        ServerHttpResponse response,
+        Context context,
+        List<ContentStream.Segment> segments) {
+      this.requestContext = requestContext;
+      this.response = response;
+      this.context = context;
+      this.segments = segments.iterator();
+
+      response.addCloseHandler(() -> run(() -> fail(null)));
+    }
+
+    /** Open the next segment, or end the response. */
+    void next() {
+      if (done) {
+        return;
+      }
+
+      if (!segments.hasNext()) {
+        done = true;
+        response.end();
+        requestContext.resume();
+        return;
+      }
+
+      segments
+          .next()
+          .open()
+          .whenComplete(
+              (content, t) ->
+                  run(
+                      () -> {
+                        if (t != null) {
+                          fail(t);
+                        } else {
+                          content.subscribe(this);
+                        }
+                      }));
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      run(
+          () -> {
+            subscription = s;
+            if (done) {
+              s.cancel();
+            } else {
+              s.request(PREFETCH);
+            }
+          });
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+      var bytes = new byte[chunk.remaining()];
+      chunk.get(bytes);
+
+      run(
+          () -> {
+            if (done) {
+              return;
+            }
+
+            var current = subscription;
+            response
+                .write(bytes)
+                .whenComplete(
+                    (v, t) -> {
+                      if (t != null) {
+                        run(() -> fail(t));
+                      }
+                    });
+
+            if (response.isWriteQueueFull()) {
+              response.addDrainHandler(() -> current.request(1));
+            } else {
+              current.request(1);
+            }
+          });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      run(() -> fail(t));
+    }
+
+    @Override
+    public void onComplete() {
+      run(this::next);
+    }
+
+    /**
+     * Stop writing, on an error or when the client is gone.
+     *
+     * <p>Once the headers are sent, the error can not be mapped to a response anymore: the
+     * connection is closed so the client sees a truncated body instead of a complete one.
+     */
+    private void fail(Throwable t) {
+      if (done) {
+        return;
+      }
+
+      done = true;
+      if (subscription != null) {
+        subscription.cancel();
+      }
+
+      if (t == null) {
+        requestContext.resume();
+      } else if (response.headWritten()) {
+        Log.warn("Content download interrupted", t);
+        requestContext.serverRequest().closeConnection();
+        requestContext.resume();
+      } else {
+        requestContext.resume(t);
+      }
+    }
+
+    private void run(Runnable action) {
+      if (context == null) {
+        action.run();
+      } else {
+        context.runOnContext(v -> action.run());
+      }
+    }
+  }
+}
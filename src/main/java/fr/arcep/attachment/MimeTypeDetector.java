@@ -0,0 +1,135 @@
+package fr.arcep.attachment;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ServiceUnavailableException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.tika.Tika;
+import org.apache.tika.mime.MimeType;
+import org.apache.tika.mime.MimeTypes;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Detection of the MIME type of the attachments.
+ *
+ * <p>Tika reads the content, so the detection runs on a dedicated pool instead of the event loop.
+ * Only the first {@code tmf.upload.sniff-size} bytes are read. The pool and its queue are bounded:
+ * when the queue is full the upload is rejected with a {@code 503} rather than piling up.
+ */
+@ApplicationScoped
+public class MimeTypeDetector {
+
+  private final Tika tika = new Tika();
+  private final int sniffSize;
+  private final ThreadPoolExecutor executor;
+
+  MimeTypeDetector(
+      MeterRegistry meterRegistry,
+      @ConfigProperty(name = "tmf.upload.sniff-size", defaultValue = "65536") int sniffSize,
+      @ConfigProperty(name = "tmf.mime.threads", defaultValue = "2") int threads,
+      @ConfigProperty(name = "tmf.mime.queue-size", defaultValue = "64") int queueSize) {
+    this.sniffSize = sniffSize;
+
+    var count = new AtomicInteger();
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            r -> {
+              var thread = new Thread(r, "mime-detector-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    Gauge.builder("attachments.mime.queue", executor, e -> e.getQueue().size())
+        .description("Number of attachments waiting for their MIME type detection")
+        .register(meterRegistry);
+  }
+
+  /** The number of bytes read to detect a MIME type */
+  public int getSniffSize() {
+    return sniffSize;
+  }
+
+  @PreDestroy
+  void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Detect the MIME type of a file.
+   *
+   * @param file The content
+   * @param name The name of the attachment, used as a hint
+   * @return The MIME type
+   */
+  public Uni<MimeType> detect(File file, String name) {
+    return submit(
+        () -> {
+          try (var stream = new FileInputStream(file)) {
+            return sniff(stream.readNBytes(sniffSize), name);
+          } catch (IOException e) {
+            Log.error("Unable to find mimetype", e);
+            throw new BadRequestException("Unable to find mimetype");
+          }
+        });
+  }
+
+  /**
+   * Detect the MIME type of the beginning of a content.
+   *
+   * @param prefix The first bytes of the content
+   * @param name The name of the attachment, used as a hint
+   * @return The MIME type
+   */
+  public Uni<MimeType> detect(byte[] prefix, String name) {
+    return submit(() -> sniff(prefix, name));
+  }
+
+  private MimeType sniff(byte[] prefix, String name) {
+    try {
+      var stream = new ByteArrayInputStream(prefix, 0, Math.min(prefix.length, sniffSize));
+      return MimeTypes.getDefaultMimeTypes().forName(tika.detect(stream, name));
+    } catch (Exception e) {
+      Log.error("Unable to find mimetype", e);
+      throw new BadRequestException("Unable to find mimetype");
+    }
+  }
+
+  private Uni<MimeType> submit(Supplier<MimeType> detection) {
+    return Uni.createFrom()
+        .emitter(
+            emitter -> {
+              try {
+                executor.execute(
+                    () -> {
+                      try {
+                        emitter.complete(detection.get());
+                      } catch (RuntimeException e) {
+                        emitter.fail(e);
+                      }
+                    });
+              } catch (RejectedExecutionException e) {
+                emitter.fail(
+                    new ServiceUnavailableException("Too many uploads in progress, retry later."));
+              }
+            });
+  }
+}
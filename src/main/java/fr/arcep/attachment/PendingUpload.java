@@ -0,0 +1,37 @@
+package fr.arcep.attachment;
+
+import io.quarkus.mongodb.panache.common.MongoEntity;
+import java.util.Date;
+import org.bson.Document;
+import org.bson.codecs.pojo.annotations.BsonId;
+
+/**
+ * An attachment whose content is sent to a presigned URL, created once the upload is confirmed.
+ *
+ * <p>Mongo drops it at {@code expiresAt}, with a TTL index. Its content is dropped by the lifecycle
+ * rule of the {@link #PREFIX} of the bucket, see {@link BucketRegistry}.
+ */
+@MongoEntity(collection = "attachment_pending")
+public class PendingUpload {
+
+  /** The prefix of the contents sent to the presigned URLs */
+  static final String PREFIX = "pending/";
+
+  /** The id of the attachment to create */
+  @BsonId public String id;
+
+  public String domain;
+
+  /** The input of the attachment */
+  public Document attachment;
+
+  public Date expiresAt;
+
+  /** When the confirmation started, {@code null} while the upload is not being confirmed */
+  public Date claimedAt;
+
+  /** The content is sent under this key, and moved to the id of the attachment on confirmation */
+  String contentKey() {
+    return PREFIX + id;
+  }
+}
@@ -0,0 +1,59 @@
+package fr.arcep.attachment;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import io.quarkus.logging.Log;
+import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepositoryBase;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@ApplicationScoped
+public class PendingUploadRepository
+    implements ReactivePanacheMongoRepositoryBase<PendingUpload, String> {
+
+  void onStart(@Observes StartupEvent event) {
+    mongoCollection()
+        .createIndex(
+            Indexes.ascending("expiresAt"), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS))
+        .subscribe()
+        .with(
+            i -> Log.debugf("Index %s ready", i),
+            t -> Log.warn("Unable to create the TTL index of the pending uploads", t));
+  }
+
+  /**
+   * Claim a pending upload for its confirmation, so concurrent confirmations do not both create the
+   * attachment.
+   *
+   * @param id
+   * @param domain
+   * @return The claimed upload, or {@code null} if it does not exist or is already being confirmed
+   */
+  Uni<PendingUpload> claim(String id, String domain) {
+    return mongoCollection()
+        .findOneAndUpdate(
+            Filters.and(
+                Filters.eq("_id", id), Filters.eq("domain", domain), Filters.eq("claimedAt", null)),
+            Updates.set("claimedAt", new Date()),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+  }
+
+  /**
+   * Release the claim of a failed confirmation, so it can be confirmed again.
+   *
+   * @param id
+   */
+  Uni<Void> release(String id) {
+    return mongoCollection()
+        .updateOne(Filters.eq("_id", id), Updates.unset("claimedAt"))
+        .replaceWithVoid();
+  }
+}
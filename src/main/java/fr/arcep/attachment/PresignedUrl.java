@@ -0,0 +1,39 @@
+package fr.arcep.attachment;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import java.util.Date;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+@Schema(
+    name = "PresignedUrl",
+    description =
+        """
+    A short-lived URL to send or read the content of an attachment directly from the storage.
+    """)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@RegisterForReflection
+public class PresignedUrl {
+
+  @Schema(
+      description = "Identifier of the attachment, to confirm an upload",
+      example = "3180b1ec-e3f4-4b3b-8b3b-3b3b3b3b3b3b")
+  public String id;
+
+  @Schema(description = "The HTTP method to use", example = "PUT")
+  public String method;
+
+  @Schema(description = "The URL to call")
+  public String url;
+
+  @Schema(description = "The URL can not be used after this date")
+  public Date expiresAt;
+
+  public PresignedUrl() {}
+
+  PresignedUrl(String method, String url, Date expiresAt) {
+    this.method = method;
+    this.url = url;
+    this.expiresAt = expiresAt;
+  }
+}
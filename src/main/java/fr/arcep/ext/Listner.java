@@ -1,45 +1,190 @@
 package fr.arcep.ext;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import fr.arcep.attachment.AttachmentEntity;
+import fr.arcep.attachment.AttachmentBlobRepository;
+import fr.arcep.attachment.AttachmentNotification;
+import fr.arcep.attachment.AttachmentVariants;
 import fr.arcep.malfacon.Malfacon;
 import fr.arcep.troubleticket.TroubleTicketNotification;
 import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.reactive.messaging.MutinyEmitter;
+import io.smallrye.reactive.messaging.kafka.KafkaRecordBatch;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import org.eclipse.microprofile.reactive.messaging.Channel;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 
 @ApplicationScoped
 public class Listner {
 
+  /** The maximum number of keys of a {@code DeleteObjects} request */
+  static final int DELETE_BATCH_SIZE = 1000;
+
   @Inject S3AsyncClient s3;
 
   @Inject ObjectMapper mapper;
 
+  @Inject AttachmentBlobRepository blobRepository;
+
+  @Channel("attachment-delete-dlq")
+  MutinyEmitter<AttachmentNotification> deleteDeadLetterEmitter;
+
+  /**
+   * Delete the contents of a batch of deleted attachments.
+   *
+   * <p>The keys are deleted with one {@code DeleteObjects} per bucket and per {@value
+   * #DELETE_BATCH_SIZE} keys. The attachments which could not be deleted are sent to the {@code
+   * attachment-delete-dlq} topic, and the batch is acknowledged once they are.
+   */
   @Incoming("attachment-delete-s3")
-  public Uni<Void> deleteAttachment(AttachmentEntity entity) {
-    var s3Request = DeleteObjectRequest.builder().bucket(entity.domain).key(entity.id).build();
+  public Uni<Void> deleteAttachments(KafkaRecordBatch<String, AttachmentNotification> batch) {
+    return Multi.createFrom()
+        .iterable(batch.getPayload())
+        .onItem()
+        .transformToUniAndMerge(this::getObjectToDelete)
+        .collect()
+        .asList()
+        .chain(this::deleteObjects)
+        .chain(
+            failed ->
+                Multi.createFrom()
+                    .iterable(failed)
+                    .onItem()
+                    .transformToUniAndMerge(deleteDeadLetterEmitter::send)
+                    .collect()
+                    .last())
+        .chain(() -> Uni.createFrom().completionStage(batch::ack))
+        .onFailure()
+        .call(t -> Uni.createFrom().completionStage(() -> batch.nack(t)));
+  }
+
+  /** Release the content of an attachment, the key is {@code null} while it is still referenced. */
+  private Uni<ObjectToDelete> getObjectToDelete(AttachmentNotification attachment) {
+    if (attachment.contentHash == null) {
+      // stored before the deduplication
+      return Uni.createFrom().item(new ObjectToDelete(attachment, attachment.id, false));
+    }
+
+    return blobRepository
+        .release(attachment.domain, attachment.contentHash)
+        .map(key -> new ObjectToDelete(attachment, key, false))
+        .onFailure()
+        .recoverWithItem(
+            t -> {
+              Log.errorf(t, "Attachment %s not released", attachment.id);
+              return new ObjectToDelete(attachment, null, true);
+            });
+  }
+
+  /**
+   * Delete the objects, grouped by bucket.
+   *
+   * @return The attachments which could not be deleted
+   */
+  private Uni<List<AttachmentNotification>> deleteObjects(List<ObjectToDelete> objects) {
+    var failed = new ArrayList<AttachmentNotification>();
+    var byBucket = new HashMap<String, Map<String, AttachmentNotification>>();
+
+    for (var object : objects) {
+      if (object.failed()) {
+        failed.add(object.attachment());
+      } else if (object.key() == null) {
+        Log.infof("Attachment %s deleted, its content is still referenced", object.attachment().id);
+      } else {
+        var byKey =
+            byBucket.computeIfAbsent(object.attachment().domain, k -> new LinkedHashMap<>());
+        byKey.put(object.key(), object.attachment());
+        // the smaller versions of the images, if any
+        for (var variant : AttachmentVariants.Variant.values()) {
+          byKey.put(variant.key(object.key()), object.attachment());
+        }
+      }
+    }
+
+    var requests = new ArrayList<Uni<List<AttachmentNotification>>>();
+    byBucket.forEach(
+        (bucket, byKey) -> {
+          var keys = new ArrayList<>(byKey.keySet());
+          for (var i = 0; i < keys.size(); i += DELETE_BATCH_SIZE) {
+            var chunk = keys.subList(i, Math.min(i + DELETE_BATCH_SIZE, keys.size()));
+            requests.add(deleteObjects(bucket, chunk, byKey));
+          }
+        });
+
+    if (requests.isEmpty()) {
+      return Uni.createFrom().item(failed);
+    }
+
+    return Uni.join()
+        .all(requests)
+        .andFailFast()
+        .map(
+            results -> {
+              results.forEach(failed::addAll);
+              return failed;
+            });
+  }
+
+  /**
+   * Delete up to {@value #DELETE_BATCH_SIZE} objects of a bucket.
+   *
+   * @return The attachments which could not be deleted
+   */
+  private Uni<List<AttachmentNotification>> deleteObjects(
+      String bucket, List<String> keys, Map<String, AttachmentNotification> byKey) {
+    var s3Request =
+        DeleteObjectsRequest.builder()
+            .bucket(bucket)
+            .delete(
+                Delete.builder()
+                    .objects(
+                        keys.stream().map(k -> ObjectIdentifier.builder().key(k).build()).toList())
+                    .quiet(true)
+                    .build())
+            .build();
 
     return Uni.createFrom()
-        .completionStage(() -> s3.deleteObject(s3Request))
-        .onItem()
-        .invoke(
+        .completionStage(() -> s3.deleteObjects(s3Request))
+        .map(
             r -> {
-              if (r.sdkHttpResponse().isSuccessful()) {
-                Log.infof("Attachment %s deleted", entity.id);
-              } else {
-                Log.errorf("Attachment %s not deleted", entity.id);
+              var errors = r.errors();
+              for (var error : errors) {
+                Log.errorf(
+                    "Attachment %s not deleted: %s", byKey.get(error.key()).id, error.message());
               }
+
+              Log.infof("%d attachments deleted from %s", keys.size() - errors.size(), bucket);
+              return errors.stream().map(e -> byKey.get(e.key())).distinct().toList();
             })
         .onFailure()
-        .invoke(t -> Log.errorf(t, "Attachment %s not deleted", entity.id))
-        .replaceWithVoid();
+        .recoverWithItem(
+            t -> {
+              Log.errorf(t, "%d attachments not deleted from %s", keys.size(), bucket);
+              return keys.stream().map(byKey::get).distinct().toList();
+            });
   }
 
+  /**
+   * The object of a deleted attachment.
+   *
+   * @param attachment
+   * @param key The key of the object to delete, {@code null} if there is none
+   * @param failed If the content of the attachment could not be released
+   */
+  private record ObjectToDelete(AttachmentNotification attachment, String key, boolean failed) {}
+
   @Incoming("troubleticket-created")
   public Uni<Void> troubleTicketCreated(TroubleTicketNotification tt) {
     return Uni.createFrom()
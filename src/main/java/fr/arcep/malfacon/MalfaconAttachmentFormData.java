@@ -1,9 +1,8 @@
 package fr.arcep.malfacon;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.arcep.attachment.AttachmentFormData;
-import io.quarkus.arc.Arc;
+import fr.arcep.tmf.util.EntitySupport;
 import jakarta.ws.rs.core.MediaType;
 import java.io.File;
 import java.util.Map;
@@ -30,7 +29,7 @@ public class MalfaconAttachmentFormData {
   public MalfaconAttachment attachment;
 
   public AttachmentFormData toAttachmentFormData() {
-    var om = Arc.container().instance(ObjectMapper.class).get();
+    var om = EntitySupport.objectMapper();
 
     var formData = new AttachmentFormData();
     formData.file = file;
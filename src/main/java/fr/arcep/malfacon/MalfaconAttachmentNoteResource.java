@@ -1,10 +1,11 @@
 package fr.arcep.malfacon;
 
 import fr.arcep.OpenAPI;
-import fr.arcep.note.NoteService;
+import fr.arcep.ProxyStreams;
+import fr.arcep.note.NoteApi;
 import fr.arcep.tmf.model.Note;
 import fr.arcep.tmf.model.RelatedEntity;
-import fr.arcep.troubleticket.TroubleTicketService;
+import fr.arcep.troubleticket.TroubleTicketExistenceCache;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
@@ -19,7 +20,6 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
-import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
@@ -33,7 +33,6 @@ import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
 @Path("api/malfacon/{malfaconId}/attachment/{attachmentId}/note")
@@ -42,9 +41,11 @@ public class MalfaconAttachmentNoteResource {
 
   private static final String CLIENT_ID = "malfacon";
 
-  @Inject @RestClient NoteService noteService;
+  @Inject NoteApi noteService;
 
-  @Inject @RestClient TroubleTicketService troubleTicketService;
+  @Inject ProxyStreams streams;
+
+  @Inject TroubleTicketExistenceCache troubleTickets;
 
   @GET
   @Consumes(MediaType.APPLICATION_JSON)
@@ -52,7 +53,11 @@ public class MalfaconAttachmentNoteResource {
   @Operation(summary = "List all notes")
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -71,6 +76,8 @@ public class MalfaconAttachmentNoteResource {
   @Parameter(ref = "sort")
   @Parameter(ref = "limit")
   @Parameter(ref = "offset")
+  @Parameter(ref = "cursor")
+  @Parameter(ref = "X-Total-Count-Mode")
   @Parameter(ref = "fields")
   public Uni<Response> list(
       UUID malfaconId, UUID attachmentId, @Schema(hidden = true) @Context UriInfo uriInfo) {
@@ -99,8 +106,10 @@ public class MalfaconAttachmentNoteResource {
         .onItem()
         .transformToMulti(
             r ->
-                noteService.stream(
-                    CLIENT_ID, getQueryParameters(malfaconId, attachmentId, uriInfo)))
+                streams.relay(
+                    CLIENT_ID,
+                    noteService.streamRaw(
+                        CLIENT_ID, getQueryParameters(malfaconId, attachmentId, uriInfo))))
         .onFailure(WebApplicationException.class)
         .recoverWithItem(t -> WebApplicationException.class.cast(t).getResponse());
   }
@@ -198,15 +207,10 @@ public class MalfaconAttachmentNoteResource {
 
   private MultivaluedMap<String, String> getQueryParameters(
       UUID malfaconId, UUID attachmentId, UriInfo uriInfo) {
-    var queryParameters = new MultivaluedHashMap<String, String>(uriInfo.getQueryParameters());
-    queryParameters.putSingle("relatedEntity.0.@referredType", "malfaconTroubleTicket");
-    queryParameters.putSingle("relatedEntity.0.id", malfaconId.toString());
-    queryParameters.putSingle("relatedEntity.1.@referredType", "MalfaconAttachment");
-    queryParameters.putSingle("relatedEntity.1.id", attachmentId.toString());
-    return queryParameters;
+    return MalfaconFilters.relatedTo(uriInfo.getQueryParameters(), malfaconId, attachmentId);
   }
 
-  private Uni<Response> getTroubleTicket(UUID malfaconId) {
-    return troubleTicketService.get(CLIENT_ID, malfaconId);
+  private Uni<Void> getTroubleTicket(UUID malfaconId) {
+    return troubleTickets.check(CLIENT_ID, malfaconId);
   }
 }
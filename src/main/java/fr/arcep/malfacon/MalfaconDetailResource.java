@@ -0,0 +1,218 @@
+package fr.arcep.malfacon;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.arcep.attachment.AttachmentApi;
+import fr.arcep.note.NoteApi;
+import fr.arcep.tmf.util.ApiResponses;
+import fr.arcep.tmf.util.EntitySupport;
+import fr.arcep.troubleticket.TroubleTicketApi;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+@Path("api/malfacon/{malfaconId}/detail")
+@Tag(ref = "Malfacon Proxy")
+public class MalfaconDetailResource {
+
+  private static final String CLIENT_ID = "malfacon";
+
+  /** The parts returned when none are selected */
+  private static final Set<String> ALL_PARTS = Set.of("attachments", "attachments.notes", "notes");
+
+  /** The largest page of the services, the lists being read page by page */
+  private static final String LIMIT = "100";
+
+  private static final GenericType<List<ObjectNode>> LIST = new GenericType<>() {};
+
+  @Inject TroubleTicketApi troubleTicketService;
+
+  @Inject AttachmentApi attachmentService;
+
+  @Inject NoteApi noteService;
+
+  /** The maximum number of attachment notes read at the same time */
+  @ConfigProperty(name = "tmf.malfacon.detail.concurrency", defaultValue = "4")
+  int concurrency;
+
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Operation(
+      summary = "Get a trouble ticket of type `malfacon` with its attachments and notes.",
+      description =
+          """
+        The trouble ticket is returned under `malfacon`, its attachments under `attachments` and
+        its notes under `notes`. The notes of each attachment are under its `notes` property.
+
+        All the attachments and notes are returned, read 100 at a time.
+        """)
+  @APIResponse(
+      responseCode = "200",
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(type = SchemaType.OBJECT)))
+  @APIResponse(ref = "error-400")
+  @APIResponse(ref = "error-404")
+  @APIResponse(ref = "error-500")
+  @APIResponse(ref = "error-501")
+  @APIResponse(ref = "error-502")
+  @APIResponse(ref = "error-503")
+  @Parameter(
+      name = "fields",
+      description =
+          "The parts to return, separated by commas: `attachments`, `attachments.notes`, `notes`."
+              + " All of them by default.",
+      schema = @Schema(type = SchemaType.STRING))
+  public Uni<Response> get(UUID malfaconId, @QueryParam("fields") String fields) {
+    var parts = getParts(fields);
+
+    var malfacon =
+        troubleTicketService
+            .get(CLIENT_ID, malfaconId)
+            .map(r -> ApiResponses.readEntity(r, ObjectNode.class));
+
+    var attachments =
+        parts.contains("attachments")
+            ? listAll(
+                    q -> attachmentService.list(CLIENT_ID, q), getQueryParameters(malfaconId, null))
+                .call(
+                    l ->
+                        parts.contains("attachments.notes")
+                            ? addNotes(malfaconId, l)
+                            : Uni.createFrom().voidItem())
+            : Uni.createFrom().<List<ObjectNode>>nullItem();
+
+    var notes =
+        parts.contains("notes")
+            ? listAll(q -> noteService.list(CLIENT_ID, q), getQueryParameters(malfaconId, null))
+            : Uni.createFrom().<List<ObjectNode>>nullItem();
+
+    return Uni.combine()
+        .all()
+        .unis(malfacon, attachments, notes)
+        .asTuple()
+        .map(
+            t -> {
+              var detail = EntitySupport.objectMapper().createObjectNode();
+              detail.set("malfacon", t.getItem1());
+              if (t.getItem2() != null) {
+                detail.putArray("attachments").addAll(t.getItem2());
+              }
+              if (t.getItem3() != null) {
+                detail.putArray("notes").addAll(t.getItem3());
+              }
+
+              return Response.ok(detail).build();
+            })
+        .onFailure(WebApplicationException.class)
+        .recoverWithItem(t -> WebApplicationException.class.cast(t).getResponse());
+  }
+
+  /** Read the notes of the attachments, {@code concurrency} at a time. */
+  private Uni<Void> addNotes(UUID malfaconId, List<ObjectNode> attachments) {
+    return Multi.createFrom()
+        .iterable(attachments)
+        .onItem()
+        .transformToUni(
+            a ->
+                listAll(
+                        q -> noteService.list(CLIENT_ID, q),
+                        getQueryParameters(malfaconId, UUID.fromString(a.get("id").asText())))
+                    .invoke(l -> a.putArray("notes").addAll(l)))
+        .merge(concurrency)
+        .collect()
+        .asList()
+        .replaceWithVoid();
+  }
+
+  private static Set<String> getParts(String fields) {
+    if (fields == null || fields.isBlank()) {
+      return ALL_PARTS;
+    }
+
+    var parts = new HashSet<String>();
+    for (var field : fields.split(",")) {
+      var part = field.trim();
+      if (!ALL_PARTS.contains(part)) {
+        throw new BadRequestException(
+            "Invalid field: " + part + ". Allowed: attachments, attachments.notes, notes");
+      }
+
+      parts.add(part);
+    }
+
+    // the notes of the attachments are returned in the attachments
+    if (parts.contains("attachments.notes")) {
+      parts.add("attachments");
+    }
+
+    return parts;
+  }
+
+  /**
+   * Read a whole list, following the cursor of each page.
+   *
+   * @param list The call of the service
+   * @param queryParameters The filters
+   * @return All the resources
+   */
+  private static Uni<List<ObjectNode>> listAll(
+      Function<MultivaluedMap<String, String>, Uni<Response>> list,
+      MultivaluedMap<String, String> queryParameters) {
+    return listFrom(list, queryParameters, "", new ArrayList<>());
+  }
+
+  private static Uni<List<ObjectNode>> listFrom(
+      Function<MultivaluedMap<String, String>, Uni<Response>> list,
+      MultivaluedMap<String, String> queryParameters,
+      String cursor,
+      List<ObjectNode> items) {
+    var page = new MultivaluedHashMap<String, String>(queryParameters);
+    page.putSingle("cursor", cursor);
+
+    return list.apply(page)
+        .chain(
+            r -> {
+              var next = r.getHeaderString("X-Next-Cursor");
+              items.addAll(ApiResponses.readEntity(r, LIST));
+
+              return next == null || next.isBlank()
+                  ? Uni.createFrom().item(items)
+                  : listFrom(list, queryParameters, next, items);
+            });
+  }
+
+  /** The filters of the proxies of the attachments and of the notes */
+  private static MultivaluedMap<String, String> getQueryParameters(
+      UUID malfaconId, UUID attachmentId) {
+    var queryParameters = new MultivaluedHashMap<String, String>();
+    queryParameters.putSingle("limit", LIMIT);
+
+    return MalfaconFilters.relatedTo(queryParameters, malfaconId, attachmentId);
+  }
+}
@@ -0,0 +1,32 @@
+package fr.arcep.malfacon;
+
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import java.util.UUID;
+
+/** The filters of the resources related to a malfaçon, as sent to the services. */
+final class MalfaconFilters {
+
+  private MalfaconFilters() {}
+
+  /**
+   * Restrict query parameters to the resources of a malfaçon.
+   *
+   * @param queryParameters The parameters of the client, copied
+   * @param malfaconId
+   * @param attachmentId The attachment of the resources, {@code null} for the malfaçon itself
+   * @return The query parameters of the service
+   */
+  static MultivaluedMap<String, String> relatedTo(
+      MultivaluedMap<String, String> queryParameters, UUID malfaconId, UUID attachmentId) {
+    var filters = new MultivaluedHashMap<String, String>(queryParameters);
+    filters.putSingle("relatedEntity.0.@referredType", "malfaconTroubleTicket");
+    filters.putSingle("relatedEntity.0.id", malfaconId.toString());
+    if (attachmentId != null) {
+      filters.putSingle("relatedEntity.1.@referredType", "MalfaconAttachment");
+      filters.putSingle("relatedEntity.1.id", attachmentId.toString());
+    }
+
+    return filters;
+  }
+}
@@ -2,7 +2,10 @@ package fr.arcep.malfacon;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import fr.arcep.OpenAPI;
-import fr.arcep.troubleticket.TroubleTicketService;
+import fr.arcep.ProxyStreams;
+import fr.arcep.tmf.util.ApiResponses;
+import fr.arcep.troubleticket.TroubleTicketApi;
+import fr.arcep.troubleticket.TroubleTicketExistenceCache;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.reactive.messaging.MutinyEmitter;
@@ -31,7 +34,6 @@ import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.eclipse.microprofile.reactive.messaging.Channel;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
 @Path("/api/malfacon")
@@ -40,7 +42,11 @@ public class MalfaconResource {
 
   private static final String CLIENT_ID = "malfacon";
 
-  @Inject @RestClient TroubleTicketService troubleTicketService;
+  @Inject TroubleTicketApi troubleTicketService;
+
+  @Inject ProxyStreams streams;
+
+  @Inject TroubleTicketExistenceCache troubleTickets;
 
   @Channel("malfacon-create")
   MutinyEmitter<JsonNode> createEmitter;
@@ -56,7 +62,11 @@ public class MalfaconResource {
       description = OpenAPI.DOC_OPERATION_LIST_DESC)
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -71,6 +81,8 @@ public class MalfaconResource {
   @Parameter(ref = "sort")
   @Parameter(ref = "limit")
   @Parameter(ref = "offset")
+  @Parameter(ref = "cursor")
+  @Parameter(ref = "X-Total-Count-Mode")
   @Parameter(ref = "fields")
   public Uni<Response> list(@Schema(hidden = true) @Context UriInfo uriInfo) {
     return troubleTicketService
@@ -91,7 +103,8 @@ public class MalfaconResource {
               mediaType = MediaType.SERVER_SENT_EVENTS,
               schema = @Schema(implementation = Malfacon.class)))
   public Multi<Object> stream(@Schema(hidden = true) @Context UriInfo uriInfo) {
-    return troubleTicketService.stream(CLIENT_ID, uriInfo.getQueryParameters())
+    return streams
+        .relay(CLIENT_ID, troubleTicketService.streamRaw(CLIENT_ID, uriInfo.getQueryParameters()))
         .onFailure(WebApplicationException.class)
         .recoverWithItem(t -> WebApplicationException.class.cast(t).getResponse());
   }
@@ -176,15 +189,16 @@ public class MalfaconResource {
   public Uni<Response> delete(UUID malfaconId) {
     return troubleTicketService
         .delete(CLIENT_ID, malfaconId)
+        .invoke(() -> troubleTickets.invalidate(malfaconId.toString()))
         .call(() -> deleteEmitter.send(malfaconId))
         .onFailure(WebApplicationException.class)
         .recoverWithItem(t -> WebApplicationException.class.cast(t).getResponse());
   }
 
   private Uni<Response> notifyCreation(Response response) {
+    // the stream of a HTTP response is closed once buffered
     response.bufferEntity();
-    var body = response.readEntity(JsonNode.class);
-    response.close();
+    var body = ApiResponses.readEntity(response, JsonNode.class);
 
     return createEmitter.send(body).replaceWith(response);
   }
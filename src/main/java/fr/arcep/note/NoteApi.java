@@ -0,0 +1,30 @@
+package fr.arcep.note;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import java.util.UUID;
+
+/**
+ * The note API, as called by the proxies.
+ *
+ * <p>{@link NoteLocalService} calls it in-process, {@link NoteService} over HTTP.
+ */
+public interface NoteApi {
+
+  Uni<Response> list(String clientId, MultivaluedMap<String, String> query);
+
+  Multi<Object> stream(String clientId, MultivaluedMap<String, String> query);
+
+  /** The stream, as the JSON text of each event. */
+  Multi<String> streamRaw(String clientId, MultivaluedMap<String, String> query);
+
+  Uni<Response> count(String clientId, MultivaluedMap<String, String> query);
+
+  Uni<Response> get(String clientId, UUID id);
+
+  Uni<Response> create(String clientId, Object note);
+
+  Uni<Response> delete(String clientId, UUID id);
+}
@@ -0,0 +1,29 @@
+package fr.arcep.note;
+
+import fr.arcep.tmf.util.LocalServiceBase;
+import io.quarkus.arc.DefaultBean;
+import io.quarkus.arc.Unremovable;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Dependent;
+import jakarta.enterprise.inject.Typed;
+
+/**
+ * The note API called in-process, through {@link NoteResource}.
+ *
+ * <p>It is replaced by {@link NoteService} when built with {@code tmf.services.transport=http}.
+ */
+@DefaultBean
+@ApplicationScoped
+public class NoteLocalService extends LocalServiceBase<NoteResource> implements NoteApi {
+
+  @Override
+  protected Class<Local> resourceType() {
+    return Local.class;
+  }
+
+  /** The resource of a call, injected as the one of a request. It is only looked up. */
+  @Unremovable
+  @Dependent
+  @Typed(Local.class)
+  static class Local extends NoteResource {}
+}
@@ -1,12 +1,15 @@
 package fr.arcep.note;
 
 import fr.arcep.OpenAPI;
+import fr.arcep.tmf.model.BulkResult;
 import fr.arcep.tmf.model.Note;
 import fr.arcep.tmf.model.params.PaginateQuery;
 import fr.arcep.tmf.util.TmfApiBase;
+import io.smallrye.common.annotation.Blocking;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.BeanParam;
 import jakarta.ws.rs.Consumes;
@@ -22,6 +25,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.UUID;
 import org.eclipse.microprofile.openapi.annotations.Operation;
@@ -33,16 +37,21 @@ import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
 @Path("/api/note")
 @Tag(ref = "Note API")
 @RequestScoped
 public class NoteResource extends TmfApiBase<NoteEntity, NoteRepository> {
 
+  @Inject
   public NoteResource(HttpHeaders headers, @Context UriInfo uriInfo, Request request) {
     init(headers, uriInfo, request);
   }
 
+  /** A resource called in-process, see {@link NoteLocalService}. */
+  NoteResource() {}
+
   @GET
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.APPLICATION_JSON)
@@ -59,7 +68,11 @@ public class NoteResource extends TmfApiBase<NoteEntity, NoteRepository> {
       """)
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -87,7 +100,7 @@ public class NoteResource extends TmfApiBase<NoteEntity, NoteRepository> {
               mediaType = MediaType.SERVER_SENT_EVENTS,
               schema = @Schema(implementation = Note.class)))
   @Override
-  public Multi<Map<String, Object>> stream() {
+  public Multi<Object> stream() {
     return super.stream();
   }
 
@@ -131,6 +144,44 @@ public class NoteResource extends TmfApiBase<NoteEntity, NoteRepository> {
     return super.create(troubleTicket);
   }
 
+  @POST
+  @Path("bulk")
+  @Consumes({MediaType.APPLICATION_JSON, RestMediaType.APPLICATION_NDJSON})
+  @Produces(RestMediaType.APPLICATION_NDJSON)
+  @RestStreamElementType(MediaType.APPLICATION_JSON)
+  @Blocking
+  @Operation(
+      summary = "Create notes in bulk.",
+      description =
+          """
+      This endpoint is used to import a large number of notes.
+
+      The body is either a JSON array or NDJSON, one note per line.
+      Each note is validated on its own and the valid ones are created,
+      assigned to the domain specified in the header `X-Client-Id`.
+
+      The response is a stream of results, one per note and in the same order,
+      holding either the `id` of the created note or the `reason` of the failure.
+      """)
+  @RequestBody(
+      description = "The notes to create.",
+      required = true,
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(type = SchemaType.ARRAY, implementation = Note.class)))
+  @APIResponse(
+      responseCode = "200",
+      description = "The result of each note.",
+      content =
+          @Content(
+              mediaType = RestMediaType.APPLICATION_NDJSON,
+              schema = @Schema(implementation = BulkResult.class)))
+  @Override
+  public Multi<BulkResult> createBulk(InputStream body) {
+    return super.createBulk(body);
+  }
+
   @GET
   @Path("{id}")
   @Operation(
@@ -15,15 +15,18 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import java.util.UUID;
+import org.eclipse.microprofile.rest.client.annotation.RegisterClientHeaders;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
+@RegisterClientHeaders
 @RegisterRestClient(configKey = "noteService")
 @Path("/api/note")
-public interface NoteService {
+public interface NoteService extends NoteApi {
 
   @GET
+  @Override
   Uni<Response> list(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
@@ -31,21 +34,34 @@ public interface NoteService {
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.SERVER_SENT_EVENTS)
   @RestStreamElementType(MediaType.APPLICATION_JSON)
+  @Override
   Multi<Object> stream(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
+  @GET
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.SERVER_SENT_EVENTS)
+  @RestStreamElementType(MediaType.TEXT_PLAIN)
+  @Override
+  Multi<String> streamRaw(
+      @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
+
   @HEAD
+  @Override
   Uni<Response> count(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
   @POST
+  @Override
   Uni<Response> create(@HeaderParam("X-Client-Id") String clientId, Object troubleTicket);
 
   @GET
   @Path("/{id}")
+  @Override
   Uni<Response> get(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 
   @DELETE
   @Path("/{id}")
+  @Override
   Uni<Response> delete(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 }
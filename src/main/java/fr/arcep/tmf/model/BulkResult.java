@@ -0,0 +1,47 @@
+package fr.arcep.tmf.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+@Schema(
+    name = "BulkResult",
+    description =
+        """
+    The result of one item of a bulk creation.
+
+    Either the `id` of the created resource or the `reason` of the failure is set.
+    """)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@RegisterForReflection
+public class BulkResult {
+
+  @Schema(description = "Position of the item in the request body, starting at 0", example = "0")
+  public int index;
+
+  @Schema(
+      description = "Identifier of the created resource",
+      example = "3180b1ec-e3f4-4b3b-8b3b-3b3b3b3b3b3b")
+  public String id;
+
+  @Schema(
+      description = "Explanation of the reason why the item was not created",
+      example = "name: must not be blank")
+  public String reason;
+
+  public BulkResult() {}
+
+  private BulkResult(int index, String id, String reason) {
+    this.index = index;
+    this.id = id;
+    this.reason = reason;
+  }
+
+  public static BulkResult created(int index, String id) {
+    return new BulkResult(index, id, null);
+  }
+
+  public static BulkResult failed(int index, String reason) {
+    return new BulkResult(index, null, reason);
+  }
+}
@@ -1,7 +1,10 @@
 package fr.arcep.tmf.model.params;
 
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MultivaluedMap;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.hibernate.validator.constraints.Range;
 
@@ -16,4 +19,48 @@ public class PaginateQuery {
   @DefaultValue("10")
   @Range(min = 0, max = 100)
   public int limit;
+
+  @QueryParam("cursor")
+  public String cursor;
+
+  @HeaderParam("X-Total-Count-Mode")
+  @DefaultValue("exact")
+  public TotalCountMode totalCountMode;
+
+  /**
+   * Read the pagination from the query parameters, when there is no HTTP request to bind.
+   *
+   * @param queryParameters
+   * @param totalCountMode The {@code X-Total-Count-Mode} header, {@code null} for the default
+   * @return The pagination
+   */
+  public static PaginateQuery of(
+      MultivaluedMap<String, String> queryParameters, String totalCountMode) {
+    var query = new PaginateQuery();
+    query.offset = parseInt(queryParameters, "offset", 0);
+    query.limit = parseInt(queryParameters, "limit", 10);
+    query.cursor = queryParameters.getFirst("cursor");
+    query.totalCountMode =
+        totalCountMode != null ? TotalCountMode.fromString(totalCountMode) : TotalCountMode.EXACT;
+
+    if (query.limit < 0 || query.limit > 100) {
+      throw new BadRequestException("The limit must be between 0 and 100");
+    }
+
+    return query;
+  }
+
+  private static int parseInt(
+      MultivaluedMap<String, String> queryParameters, String name, int defaultValue) {
+    var value = queryParameters.getFirst(name);
+    if (value == null || value.isBlank()) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new BadRequestException("Invalid " + name + ": " + value);
+    }
+  }
 }
@@ -0,0 +1,24 @@
+package fr.arcep.tmf.model.params;
+
+import jakarta.ws.rs.BadRequestException;
+
+/** How the total number of matching resources is computed by a paginated find. */
+public enum TotalCountMode {
+  /** Count the matching documents, at the same time as the page is fetched. */
+  EXACT,
+  /** Use the collection metadata when there is no filter, otherwise fall back to exact. */
+  ESTIMATED,
+  /** Do not compute the total. */
+  NONE,
+  ;
+
+  public static TotalCountMode fromString(String value) {
+    for (var mode : values()) {
+      if (mode.name().equalsIgnoreCase(value.trim())) {
+        return mode;
+      }
+    }
+
+    throw new BadRequestException("Unknown total count mode: " + value);
+  }
+}
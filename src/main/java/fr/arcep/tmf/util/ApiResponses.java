@@ -0,0 +1,36 @@
+package fr.arcep.tmf.util;
+
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.Response;
+import java.io.InputStream;
+
+/** Reading of the responses of the service APIs, whether they were called in-process or not. */
+public final class ApiResponses {
+
+  private ApiResponses() {}
+
+  /**
+   * Read the entity of a response.
+   *
+   * <p>The responses of the in-process calls hold the entity returned by the resource, which is
+   * converted instead of being parsed.
+   *
+   * @param <T> The type of the entity
+   * @param response
+   * @param type
+   * @return The entity
+   */
+  public static <T> T readEntity(Response response, GenericType<T> type) {
+    var entity = response.getEntity();
+    if (entity == null || entity instanceof InputStream) {
+      return response.readEntity(type);
+    }
+
+    var mapper = EntitySupport.objectMapper();
+    return mapper.convertValue(entity, mapper.getTypeFactory().constructType(type.getType()));
+  }
+
+  public static <T> T readEntity(Response response, Class<T> type) {
+    return readEntity(response, new GenericType<>(type));
+  }
+}
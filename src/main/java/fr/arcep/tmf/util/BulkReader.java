@@ -0,0 +1,84 @@
+package fr.arcep.tmf.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Read the items of a bulk request one at a time, from a JSON array or from NDJSON.
+ *
+ * <p>An item which is not a JSON object is reported as failed. A syntax error can not be recovered,
+ * so it is reported on the current item and ends the reading.
+ */
+final class BulkReader implements AutoCloseable {
+
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+  private final ObjectMapper om;
+  private final MappingIterator<JsonNode> iterator;
+  private int index;
+  private boolean done;
+
+  BulkReader(ObjectMapper om, InputStream body) {
+    this.om = om;
+    try {
+      iterator = om.readerFor(JsonNode.class).readValues(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Read the next item.
+   *
+   * @return The item, or {@code null} at the end of the body
+   */
+  Item next() {
+    if (done) {
+      return null;
+    }
+
+    try {
+      if (!iterator.hasNextValue()) {
+        done = true;
+        return null;
+      }
+
+      var node = iterator.nextValue();
+      if (!node.isObject()) {
+        return new Item(index++, null, "The item must be a JSON object");
+      }
+
+      return new Item(index++, om.convertValue(node, MAP_TYPE), null);
+    } catch (JsonProcessingException e) {
+      done = true;
+      return new Item(index++, null, e.getOriginalMessage());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      iterator.close();
+    } catch (IOException e) {
+      // nothing more to read
+    }
+  }
+
+  /**
+   * An item of the request.
+   *
+   * @param index The position of the item in the body
+   * @param data The item, {@code null} when it is invalid
+   * @param error The reason why the item is invalid
+   */
+  record Item(int index, Map<String, Object> data, String error) {}
+}
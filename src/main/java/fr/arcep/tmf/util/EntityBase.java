@@ -3,9 +3,6 @@ package fr.arcep.tmf.util;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.arcep.tmf.model.Base;
-import io.quarkus.arc.Arc;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -35,9 +32,12 @@ public class EntityBase extends Base {
 
   @BsonExtraElements public Document payload = new Document();
 
-  @SuppressWarnings("unchecked")
   public Map<String, Object> toMap() {
-    var om = Arc.container().instance(ObjectMapper.class).get();
+    return toMap(EntitySupport.objectMapper());
+  }
+
+  @SuppressWarnings("unchecked")
+  public Map<String, Object> toMap(ObjectMapper om) {
     Map<String, Object> map = om.convertValue(this, Map.class);
 
     var extraData = map.getOrDefault(PAYLOAD_FIELD, new HashMap<String, Object>());
@@ -47,39 +47,43 @@ public class EntityBase extends Base {
     return map;
   }
 
+  /**
+   * Build an entity from the input of the API.
+   *
+   * <p>The fields declared by the entity class are bound to the entity, any other property is
+   * stored in the payload.
+   *
+   * @param map The input
+   * @param toValueType The entity class
+   * @param ignoredFields The properties of the input to ignore
+   * @return The entity
+   */
   public static <E extends EntityBase> E fromMap(
       Map<String, Object> map, Class<E> toValueType, List<String> ignoredFields) {
     ignoredFields.forEach(map::remove);
 
-    var newMap = new HashMap<String, Object>();
-    var payload = new HashMap<String, Object>();
-    var fields = new ArrayList<String>();
-
-    Arrays.asList(toValueType.getDeclaredFields())
-        .forEach(
-            f -> {
-              var name = f.getName();
-              fields.add(name);
-              if (map.containsKey(name) && map.get(name) != null) {
-                if (BANNED_FIELDS.contains(name)) {
-                  payload.put(name, map.get(name));
-                } else {
-                  newMap.put(name, map.get(name));
-                }
-              }
-            });
+    var om = EntitySupport.objectMapper();
+    var descriptor = EntityDescriptor.of(toValueType);
+    var entity = toValueType.cast(descriptor.newInstance());
+    var payload = new Document();
 
     map.forEach(
         (k, v) -> {
-          if (!fields.contains(k)) {
+          if (!descriptor.isDeclared(k)) {
+            payload.put(k, v);
+          } else if (v != null && BANNED_FIELDS.contains(k)) {
             payload.put(k, v);
+          } else if (v != null) {
+            var binder = descriptor.getBinder(k);
+            if (binder != null) {
+              binder.bind(entity, v, om);
+            }
           }
         });
 
-    newMap.put(PAYLOAD_FIELD, payload);
+    entity.payload = payload;
 
-    var om = Arc.container().instance(ObjectMapper.class).get();
-    return om.convertValue(newMap, toValueType);
+    return entity;
   }
 
   protected List<String> getBannedFields() {
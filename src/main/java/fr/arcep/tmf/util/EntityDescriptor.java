@@ -0,0 +1,378 @@
+package fr.arcep.tmf.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.arcep.tmf.model.Base;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.Document;
+import org.bson.codecs.pojo.annotations.BsonId;
+
+/**
+ * Metadata of an entity class, computed once per class.
+ *
+ * <p>The JSON properties of an entity are not always stored under the same name in Mongo: the id is
+ * stored as {@code _id}, some fields are renamed with {@link JsonProperty} and the {@code @type}
+ * like properties are backed by plain fields. The extra properties of the {@code payload} are
+ * stored at the root of the document, so any other JSON property has the same name in Mongo. The
+ * properties ignored by Jackson, like an internal key, are stored but never returned.
+ *
+ * <p>It also holds the fields declared by the entity class, used by {@link EntityBase#fromMap} to
+ * split the input between the declared fields and the payload without any reflection.
+ */
+public final class EntityDescriptor {
+
+  private static final ClassValue<EntityDescriptor> DESCRIPTORS =
+      new ClassValue<>() {
+        @Override
+        protected EntityDescriptor computeValue(Class<?> type) {
+          return new EntityDescriptor(type);
+        }
+      };
+
+  private final Map<String, Property> byJsonName = new LinkedHashMap<>();
+  private final Map<String, Property> byBsonName = new HashMap<>();
+
+  /** The Mongo names of the properties ignored by Jackson */
+  private final Set<String> ignoredBsonNames = new HashSet<>();
+
+  /** The fields already registered, which hide the fields of the same name of the parents */
+  private final Set<String> registeredFields = new HashSet<>();
+
+  /** The fields declared by the class itself, which are not part of the payload */
+  private final Set<String> declaredFields = new HashSet<>();
+
+  /** The declared fields which can be written from the input, by name */
+  private final Map<String, Binder> binders = new HashMap<>();
+
+  private final Constructor<?> constructor;
+
+  private EntityDescriptor(Class<?> type) {
+    constructor = getConstructor(type);
+
+    for (var field : type.getDeclaredFields()) {
+      registerDeclared(field);
+    }
+
+    for (var c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (var field : c.getDeclaredFields()) {
+        register(field);
+      }
+
+      for (var method : c.getDeclaredMethods()) {
+        register(method);
+      }
+    }
+  }
+
+  public static EntityDescriptor of(Class<?> type) {
+    return DESCRIPTORS.get(type);
+  }
+
+  /**
+   * Create a new instance of the class with its no-arg constructor.
+   *
+   * @return The new instance
+   */
+  public Object newInstance() {
+    if (constructor == null) {
+      throw new IllegalStateException("No default constructor");
+    }
+
+    try {
+      return constructor.newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to instantiate " + constructor.getName(), e);
+    }
+  }
+
+  /**
+   * Create the instance the default values of the properties are read from, see {@link
+   * Property#defaultValue(Object)}. A new one is needed for each entity: the initializers, like the
+   * one of the id, are not constant.
+   *
+   * @return The new instance, or {@code null} if the class has no no-arg constructor
+   */
+  public Object newDefaults() {
+    return constructor == null ? null : newInstance();
+  }
+
+  /**
+   * Check if a field is declared by the class itself.
+   *
+   * @param name
+   * @return {@code true} if the field is declared by the class, not by a parent class
+   */
+  public boolean isDeclared(String name) {
+    return declaredFields.contains(name);
+  }
+
+  /**
+   * Get the binder of a declared field.
+   *
+   * @param name
+   * @return The binder, or {@code null} if the field can not be written from the input
+   */
+  public Binder getBinder(String name) {
+    return binders.get(name);
+  }
+
+  /**
+   * Get the JSON properties of the entity.
+   *
+   * @return The properties, the ones of the subclasses first
+   */
+  public Collection<Property> getProperties() {
+    return byJsonName.values();
+  }
+
+  /**
+   * Get the property stored under a Mongo name.
+   *
+   * @param bsonName
+   * @return The property, or {@code null} for an extra property
+   */
+  public Property getPropertyByBsonName(String bsonName) {
+    return byBsonName.get(bsonName);
+  }
+
+  /**
+   * Check if a Mongo field holds a property ignored by Jackson, which is not returned.
+   *
+   * @param bsonName
+   * @return {@code true} if the field is not a JSON property of the entity
+   */
+  public boolean isIgnored(String bsonName) {
+    return ignoredBsonNames.contains(bsonName);
+  }
+
+  /**
+   * Get the Mongo names of a JSON property.
+   *
+   * @param jsonName
+   * @return The names under which the property can be stored
+   */
+  public List<String> getBsonNames(String jsonName) {
+    var property = byJsonName.get(jsonName);
+    if (property == null || property.bsonName().equals(jsonName)) {
+      return List.of(jsonName);
+    }
+
+    // a renamed property can also be sent by the client as an extra property
+    return List.of(property.bsonName(), jsonName);
+  }
+
+  /**
+   * Build the Mongo projection of a list of JSON properties.
+   *
+   * @param jsonNames
+   * @return The projection, e.g. {@code {"_id": 1, "status": 1}}
+   */
+  public Document getProjection(Collection<String> jsonNames) {
+    var projection = new Document();
+    jsonNames.forEach(n -> getBsonNames(n).forEach(b -> projection.put(b, 1)));
+
+    // Mongo rejects a projection with both a path and one of its sub paths
+    projection
+        .keySet()
+        .removeIf(k -> projection.keySet().stream().anyMatch(p -> k.startsWith(p + ".")));
+
+    return projection;
+  }
+
+  private void register(Field field) {
+    var modifiers = field.getModifiers();
+    var property = field.getAnnotation(JsonProperty.class);
+    if (Modifier.isStatic(modifiers) || !registeredFields.add(field.getName())) {
+      return;
+    }
+
+    var bsonName = field.isAnnotationPresent(BsonId.class) ? "_id" : field.getName();
+    if (field.isAnnotationPresent(JsonIgnore.class)) {
+      ignoredBsonNames.add(bsonName);
+      return;
+    }
+
+    if (property == null && !Modifier.isPublic(modifiers)) {
+      return;
+    }
+
+    var jsonName =
+        property != null && !property.value().isEmpty() ? property.value() : field.getName();
+
+    register(
+        new Property(
+            jsonName,
+            bsonName,
+            elementType(field.getGenericType()),
+            field.trySetAccessible() ? field : null));
+  }
+
+  /** Getters, like {@code @type} which is backed by the {@code type} property. */
+  private void register(Method method) {
+    var name = method.getName();
+    if (Modifier.isStatic(method.getModifiers())
+        || !Modifier.isPublic(method.getModifiers())
+        || method.getParameterCount() != 0
+        || !name.startsWith("get")
+        || name.length() == 3) {
+      return;
+    }
+
+    var bsonName = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+    if (method.isAnnotationPresent(JsonIgnore.class)) {
+      ignoredBsonNames.add(bsonName);
+      return;
+    }
+
+    var property = method.getAnnotation(JsonProperty.class);
+    var jsonName = property != null && !property.value().isEmpty() ? property.value() : bsonName;
+
+    register(new Property(jsonName, bsonName, elementType(method.getGenericReturnType()), method));
+  }
+
+  private void register(Property property) {
+    if (ignoredBsonNames.contains(property.bsonName())) {
+      return;
+    }
+
+    if (byJsonName.putIfAbsent(property.jsonName(), property) == null) {
+      byBsonName.putIfAbsent(property.bsonName(), property);
+    }
+  }
+
+  /**
+   * Declared fields can be written unless they are read only, ignored, or renamed: the input is
+   * keyed by field name.
+   */
+  private void registerDeclared(Field field) {
+    var modifiers = field.getModifiers();
+    if (Modifier.isStatic(modifiers)) {
+      return;
+    }
+
+    declaredFields.add(field.getName());
+
+    var property = field.getAnnotation(JsonProperty.class);
+    if ((property == null && !Modifier.isPublic(modifiers))
+        || field.isAnnotationPresent(JsonIgnore.class)
+        || (property != null && property.access() == JsonProperty.Access.READ_ONLY)
+        || (property != null
+            && !property.value().isEmpty()
+            && !property.value().equals(field.getName()))
+        || !field.trySetAccessible()) {
+      return;
+    }
+
+    binders.put(field.getName(), new Binder(field));
+  }
+
+  private static Constructor<?> getConstructor(Class<?> type) {
+    try {
+      var constructor = type.getDeclaredConstructor();
+      return constructor.trySetAccessible() ? constructor : null;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /** Get the TMF model class of a property, or of the elements of a collection property. */
+  private static Class<?> elementType(Type type) {
+    if (type instanceof ParameterizedType parameterized
+        && parameterized.getRawType() instanceof Class<?> raw
+        && Collection.class.isAssignableFrom(raw)) {
+      type = parameterized.getActualTypeArguments()[0];
+    }
+
+    return type instanceof Class<?> c && Base.class.isAssignableFrom(c) ? c : null;
+  }
+
+  /**
+   * Write a value into a field, converting it with Jackson when it is not of the field type.
+   *
+   * @param field
+   */
+  public record Binder(Field field) {
+
+    public void bind(Object target, Object value, ObjectMapper om) {
+      try {
+        field.set(target, convert(value, om));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to set " + field.getName(), e);
+      }
+    }
+
+    private Object convert(Object value, ObjectMapper om) {
+      var type = field.getType();
+
+      if (type == String.class && value instanceof String
+          || (type == boolean.class || type == Boolean.class) && value instanceof Boolean
+          || (type == int.class || type == Integer.class) && value instanceof Integer
+          || (type == long.class || type == Long.class) && value instanceof Long
+          || (type == double.class || type == Double.class) && value instanceof Double) {
+        return value;
+      }
+
+      if ((type == long.class || type == Long.class) && value instanceof Integer i) {
+        return i.longValue();
+      }
+
+      return om.convertValue(value, om.constructType(field.getGenericType()));
+    }
+  }
+
+  /**
+   * A JSON property of an entity.
+   *
+   * @param jsonName The name of the property in the API
+   * @param bsonName The name of the property in Mongo
+   * @param elementType The TMF model class of the value or of its elements, {@code null} for other
+   *     types
+   * @param accessor The field or the getter of the property, {@code null} when it can not be read
+   */
+  public record Property(
+      String jsonName, String bsonName, Class<?> elementType, AccessibleObject accessor) {
+
+    /**
+     * Read the default value of the property.
+     *
+     * @param defaults An instance returned by {@link EntityDescriptor#newDefaults()}
+     * @return The value of the property on the instance, {@code null} when it can not be read
+     */
+    public Object defaultValue(Object defaults) {
+      if (defaults == null || accessor == null) {
+        return null;
+      }
+
+      try {
+        return accessor instanceof Field field
+            ? field.get(defaults)
+            : ((Method) accessor).invoke(defaults);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Get the descriptor of the value or of its elements.
+     *
+     * @return The descriptor, or {@code null} if the value is not a TMF model
+     */
+    public EntityDescriptor getElementDescriptor() {
+      return elementType == null ? null : EntityDescriptor.of(elementType);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package fr.arcep.tmf.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.arc.Arc;
+import io.quarkus.runtime.Startup;
+import jakarta.inject.Singleton;
+import jakarta.validation.Validator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The beans used by the entities and the repositories, resolved once.
+ *
+ * <p>{@link EntityBase} and the default methods of {@link RepositoryBase} can not be injected, so
+ * they read the beans held by this singleton instead of looking them up in the container on each
+ * call.
+ */
+@Startup
+@Singleton
+public class EntitySupport {
+
+  private static volatile EntitySupport instance;
+
+  private final ObjectMapper objectMapper;
+  private final Validator validator;
+  private final MeterRegistry meterRegistry;
+  private final Map<CounterKey, Counter> counters = new ConcurrentHashMap<>();
+
+  EntitySupport(ObjectMapper objectMapper, Validator validator, MeterRegistry meterRegistry) {
+    this.objectMapper = objectMapper;
+    this.validator = validator;
+    this.meterRegistry = meterRegistry;
+    instance = this;
+  }
+
+  public static ObjectMapper objectMapper() {
+    return get().objectMapper;
+  }
+
+  public static Validator validator() {
+    return get().validator;
+  }
+
+  /**
+   * Get the counter of an operation, registered on first use.
+   *
+   * @param prefix The meter prefix of the repository
+   * @param operation The operation, e.g. {@code create}
+   * @param clientId The domain of the client
+   * @return The counter
+   */
+  public static Counter counter(String prefix, String operation, String clientId) {
+    var support = get();
+    return support.counters.computeIfAbsent(
+        new CounterKey(prefix, operation, clientId),
+        k -> support.meterRegistry.counter(k.prefix() + "." + k.operation(), "clientId", clientId));
+  }
+
+  private static EntitySupport get() {
+    var support = instance;
+    if (support == null) {
+      // not started yet, the lookup creates the singleton
+      support = Arc.container().instance(EntitySupport.class).get();
+    }
+
+    return support;
+  }
+
+  private record CounterKey(String prefix, String operation, String clientId) {}
+}
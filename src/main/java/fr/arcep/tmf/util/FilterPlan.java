@@ -0,0 +1,103 @@
+package fr.arcep.tmf.util;
+
+import fr.arcep.tmf.util.TMFilter.SearchParser;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.core.MultivaluedMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+
+/**
+ * Immutable Mongo filter compiled from the shape of a query string.
+ *
+ * <p>The shape is the set of query parameter names and the number of values of each of them. Two
+ * requests with the same shape share the same plan: only the values are bound on each request.
+ */
+public final class FilterPlan {
+
+  private final Map<String, List<Term>> terms;
+
+  private FilterPlan(Map<String, List<Term>> terms) {
+    this.terms = terms;
+  }
+
+  /**
+   * Compile a plan from the query parameters.
+   *
+   * @param queryParameters
+   * @param unsearchable The query parameters which can not be searchable
+   * @return The compiled plan
+   */
+  static FilterPlan compile(
+      MultivaluedMap<String, String> queryParameters, List<String> unsearchable) {
+    var terms = new LinkedHashMap<String, List<Term>>();
+
+    queryParameters.forEach(
+        (key, values) -> {
+          var matcher = TMFilter.MATCHER_OPERATOR.matcher(key);
+          var field = key;
+          var operator = SearchParser.EQUAL;
+
+          if (matcher.matches()) {
+            field = matcher.group("key");
+            operator = SearchParser.fromString(matcher.group("operator"));
+          }
+
+          if (unsearchable.contains(field)) {
+            return;
+          }
+
+          for (var i = 0; i < values.size(); i++) {
+            terms.computeIfAbsent(field, k -> new ArrayList<>()).add(new Term(operator, key, i));
+          }
+        });
+
+    terms.replaceAll((k, v) -> List.copyOf(v));
+
+    return new FilterPlan(Collections.unmodifiableMap(terms));
+  }
+
+  /**
+   * Bind the values of the query parameters to the plan.
+   *
+   * @param document The document to fill
+   * @param queryParameters The query parameters, with the same shape as the compiled ones
+   * @return The filled document
+   */
+  public Document bind(Document document, MultivaluedMap<String, String> queryParameters) {
+    terms.forEach(
+        (field, fieldTerms) -> {
+          if (fieldTerms.size() == 1) {
+            document.put(field, fieldTerms.get(0).process(queryParameters));
+          } else {
+            var doc = new Document();
+            fieldTerms.forEach(t -> doc.putAll(t.process(queryParameters)));
+            document.put(field, doc);
+          }
+        });
+
+    return document;
+  }
+
+  /**
+   * A single filter term: an operator applied to one value of a query parameter.
+   *
+   * @param operator The operator to apply
+   * @param parameter The name of the query parameter holding the value
+   * @param index The index of the value in the query parameter
+   */
+  record Term(SearchParser operator, String parameter, int index) {
+
+    Document process(MultivaluedMap<String, String> queryParameters) {
+      var value = queryParameters.get(parameter).get(index);
+      try {
+        return operator.getOperator().getQuery(value);
+      } catch (IllegalArgumentException e) {
+        throw new BadRequestException(e.getMessage());
+      }
+    }
+  }
+}
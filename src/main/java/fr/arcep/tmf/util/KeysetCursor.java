@@ -0,0 +1,193 @@
+package fr.arcep.tmf.util;
+
+import jakarta.ws.rs.BadRequestException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Opaque continuation token of a keyset pagination.
+ *
+ * <p>The token holds the sort of the query and the sort key values of the last returned resource.
+ * The sort always ends with {@code _id} so the position is unique. The next page is selected with a
+ * range predicate on the sort keys instead of skipping the previous resources, so an index on the
+ * sort keys is used whatever the depth of the page.
+ */
+public final class KeysetCursor {
+
+  private static final String ID_FIELD = "_id";
+  private static final JsonWriterSettings JSON_SETTINGS =
+      JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+  private final BsonDocument sort;
+  private final List<BsonValue> values;
+
+  private KeysetCursor(BsonDocument sort, List<BsonValue> values) {
+    this.sort = sort;
+    this.values = values;
+  }
+
+  /**
+   * Complete a sort with the {@code _id} tie-breaker.
+   *
+   * @param sort The requested sort, e.g. {@code {"creationDate": -1}}
+   * @return The sort used by the keyset pagination
+   */
+  public static BsonDocument keysetSort(Document sort) {
+    var keyset = new BsonDocument();
+    sort.forEach((k, v) -> keyset.append(k, new BsonInt32(((Number) v).intValue())));
+    if (!keyset.containsKey(ID_FIELD)) {
+      keyset.append(ID_FIELD, new BsonInt32(1));
+    }
+
+    return keyset;
+  }
+
+  /**
+   * Build the cursor positioned after a document.
+   *
+   * @param sort The keyset sort
+   * @param document The last returned document
+   * @return The cursor
+   */
+  public static KeysetCursor after(BsonDocument sort, BsonDocument document) {
+    var values = new ArrayList<BsonValue>();
+    sort.keySet().forEach(k -> values.add(getValue(document, k)));
+
+    return new KeysetCursor(sort, values);
+  }
+
+  /**
+   * Decode a token.
+   *
+   * @param token The token returned by {@link #encode()}
+   * @param sort The keyset sort of the current request
+   * @return The cursor
+   * @throws BadRequestException if the token is invalid, was issued for another sort or holds a
+   *     value which is not a scalar
+   */
+  public static KeysetCursor decode(String token, BsonDocument sort) {
+    BsonDocument document;
+    try {
+      var json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      document = BsonDocument.parse(json);
+    } catch (RuntimeException e) {
+      throw new BadRequestException("Invalid cursor");
+    }
+
+    if (!sort.equals(document.get("s"))) {
+      throw new BadRequestException("The cursor does not match the requested sort");
+    }
+
+    var values = document.getArray("v", new BsonArray()).getValues();
+    if (values.size() != sort.size()) {
+      throw new BadRequestException("Invalid cursor");
+    }
+
+    var keys = new ArrayList<>(sort.keySet());
+    for (var i = 0; i < keys.size(); i++) {
+      if (!isValid(keys.get(i), values.get(i))) {
+        throw new BadRequestException("Invalid cursor");
+      }
+    }
+
+    return new KeysetCursor(sort, values);
+  }
+
+  /**
+   * Check the value of a sort key read from a token. The values are compared to the documents, so a
+   * document (which could hold query operators) or an array is never accepted.
+   *
+   * @param key
+   * @param value
+   * @return {@code true} for a string {@code _id}, or a scalar value of another key
+   */
+  private static boolean isValid(String key, BsonValue value) {
+    if (ID_FIELD.equals(key)) {
+      return value.isString();
+    }
+
+    return switch (value.getBsonType()) {
+      case STRING, INT32, INT64, DOUBLE, DECIMAL128, DATE_TIME, BOOLEAN, OBJECT_ID, NULL -> true;
+      default -> false;
+    };
+  }
+
+  public String encode() {
+    var document = new BsonDocument("s", sort).append("v", new BsonArray(values));
+    var json = document.toJson(JSON_SETTINGS);
+
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Build the predicate selecting the documents after the cursor.
+   *
+   * <p>For a sort {@code (a, b, _id)}, the predicate is {@code a > va OR (a = va AND b > vb) OR (a
+   * = va AND b = vb AND _id > vid)}, with {@code >} replaced by {@code <} for descending keys. Null
+   * values are sorted first by Mongo, so nothing is after a null in a descending key and every non
+   * null value is after a null in an ascending key.
+   *
+   * @return The predicate, to be combined with the filter of the query
+   */
+  public Document predicate() {
+    var keys = new ArrayList<>(sort.keySet());
+    var branches = new ArrayList<Document>();
+
+    for (var i = 0; i < keys.size(); i++) {
+      var key = keys.get(i);
+      var value = values.get(i);
+      var ascending = sort.getNumber(key).intValue() > 0;
+
+      if (value.isNull() && !ascending) {
+        continue;
+      }
+
+      var branch = new Document();
+      for (var j = 0; j < i; j++) {
+        branch.append(keys.get(j), values.get(j));
+      }
+
+      if (value.isNull()) {
+        branch.append(key, new Document("$ne", null));
+      } else if (ascending) {
+        branch.append(key, new Document("$gt", value));
+      } else {
+        branch.append(
+            "$or",
+            List.of(
+                new Document(key, new Document("$lt", value)), new Document(key, BsonNull.VALUE)));
+      }
+
+      branches.add(branch);
+    }
+
+    return branches.isEmpty()
+        ? new Document(ID_FIELD, new Document("$exists", false))
+        : new Document("$or", branches);
+  }
+
+  private static BsonValue getValue(BsonDocument document, String path) {
+    BsonValue value = document;
+    for (var part : path.split("\\.")) {
+      if (!value.isDocument() || !value.asDocument().containsKey(part)) {
+        return BsonNull.VALUE;
+      }
+
+      value = value.asDocument().get(part);
+    }
+
+    return value;
+  }
+}
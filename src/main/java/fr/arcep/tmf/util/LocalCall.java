@@ -0,0 +1,62 @@
+package fr.arcep.tmf.util;
+
+import io.quarkus.arc.Arc;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/**
+ * A call of a {@link TmfApiBase} resource from the same process, in place of a HTTP request.
+ *
+ * @param clientId The {@code X-Client-Id} of the call
+ * @param method The HTTP method of the matching request
+ * @param queryParameters
+ * @param headers The other headers, with case insensitive names
+ */
+public record LocalCall(
+    String clientId,
+    String method,
+    MultivaluedMap<String, String> queryParameters,
+    Map<String, String> headers) {
+
+  private static final String PROPAGATED_HEADERS =
+      "org.eclipse.microprofile.rest.client.propagateHeaders";
+
+  /**
+   * Build a call, with the headers the REST clients propagate from the current request.
+   *
+   * @param clientId
+   * @param method
+   * @param queryParameters {@code null} if there are none
+   * @return The call
+   */
+  public static LocalCall of(
+      String clientId, String method, MultivaluedMap<String, String> queryParameters) {
+    var headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+    var propagated =
+        ConfigProvider.getConfig().getOptionalValue(PROPAGATED_HEADERS, String.class).orElse("");
+    if (!propagated.isBlank() && Arc.container().requestContext().isActive()) {
+      var current = Arc.container().instance(HttpHeaders.class).get();
+      for (var name : propagated.split("\\s*,\\s*")) {
+        var value = current.getHeaderString(name);
+        if (value != null) {
+          headers.put(name, value);
+        }
+      }
+    }
+
+    return new LocalCall(
+        clientId,
+        method,
+        queryParameters != null ? queryParameters : new MultivaluedHashMap<>(),
+        headers);
+  }
+
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+}
@@ -0,0 +1,118 @@
+package fr.arcep.tmf.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import fr.arcep.ExceptionMappers;
+import fr.arcep.tmf.model.params.PaginateQuery;
+import io.quarkus.arc.Arc;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Base of the in-process implementations of the service APIs, which call the resources directly
+ * instead of sending a HTTP request to this same process.
+ *
+ * <p>The responses are the ones of the resources: their entities are not serialized. The failures
+ * carry the error response a REST client would have received.
+ *
+ * @param <R> The type of the resource
+ */
+public abstract class LocalServiceBase<R extends TmfApiBase<?, ?>> {
+
+  private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {};
+
+  /**
+   * The type of the resources of the calls: a {@link jakarta.enterprise.context.Dependent} bean, so
+   * that each call gets its own instance with the injections and the configuration of a HTTP
+   * request.
+   *
+   * @return The bean class
+   */
+  protected abstract Class<? extends R> resourceType();
+
+  /**
+   * Build a resource for a call.
+   *
+   * @param call
+   * @return The resource
+   */
+  protected R resource(LocalCall call) {
+    var resource = Arc.container().instance(resourceType()).get();
+    resource.init(call);
+
+    return resource;
+  }
+
+  public Uni<Response> list(String clientId, MultivaluedMap<String, String> query) {
+    return call(
+        () -> {
+          var call = LocalCall.of(clientId, "GET", query);
+          var paginateQuery =
+              PaginateQuery.of(call.queryParameters(), call.getHeader("X-Total-Count-Mode"));
+
+          return resource(call).find(paginateQuery);
+        });
+  }
+
+  public Multi<Object> stream(String clientId, MultivaluedMap<String, String> query) {
+    return Multi.createFrom()
+        .deferred(() -> resource(LocalCall.of(clientId, "GET", query)).stream())
+        .onFailure(WebApplicationException.class)
+        .transform(t -> toClientException((WebApplicationException) t));
+  }
+
+  public Multi<String> streamRaw(String clientId, MultivaluedMap<String, String> query) {
+    var writer = EntitySupport.objectMapper().writer();
+
+    return stream(clientId, query)
+        .onItem()
+        .transform(
+            e -> {
+              try {
+                return writer.writeValueAsString(e);
+              } catch (JsonProcessingException ex) {
+                throw new UncheckedIOException(ex);
+              }
+            });
+  }
+
+  public Uni<Response> count(String clientId, MultivaluedMap<String, String> query) {
+    return call(() -> resource(LocalCall.of(clientId, "HEAD", query)).count());
+  }
+
+  public Uni<Response> get(String clientId, UUID id) {
+    return call(() -> resource(LocalCall.of(clientId, "GET", null)).get(id));
+  }
+
+  public Uni<Response> create(String clientId, Object entity) {
+    return call(() -> resource(LocalCall.of(clientId, "POST", null)).create(toMap(entity)));
+  }
+
+  public Uni<Response> delete(String clientId, UUID id) {
+    return call(() -> resource(LocalCall.of(clientId, "DELETE", null)).delete(id));
+  }
+
+  /** Convert an input as the JSON body a REST client would send. */
+  protected static Map<String, Object> toMap(Object entity) {
+    return EntitySupport.objectMapper().convertValue(entity, MAP);
+  }
+
+  /** Call a resource, failing as a REST client would. */
+  protected static Uni<Response> call(Supplier<Uni<Response>> call) {
+    return Uni.createFrom()
+        .deferred(call::get)
+        .onFailure(WebApplicationException.class)
+        .transform(t -> toClientException((WebApplicationException) t));
+  }
+
+  private static WebApplicationException toClientException(WebApplicationException e) {
+    return new WebApplicationException(e.getMessage(), e, ExceptionMappers.toResponse(e));
+  }
+}
@@ -0,0 +1,133 @@
+package fr.arcep.tmf.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+/**
+ * An entity read from Mongo as a raw document, serialized straight to JSON.
+ *
+ * <p>The output is the same as {@link EntityBase#toMap()} filtered by {@link
+ * TMFilter#filterFields(java.util.Map, java.util.List)}, without decoding the entity nor building
+ * any intermediate map: the Mongo names are renamed to their JSON names, the payload properties
+ * (stored at the root of the document) override the declared ones, the banned fields are omitted
+ * and the declared properties missing from the document are written with their default value.
+ *
+ * @param document The document read from Mongo
+ * @param descriptor The descriptor of the entity class
+ * @param fields The JSON properties to write, empty to write all of them
+ */
+@JsonSerialize(using = RawEntity.Serializer.class)
+public record RawEntity(BsonDocument document, EntityDescriptor descriptor, Set<String> fields) {
+
+  public static class Serializer extends StdSerializer<RawEntity> {
+
+    public Serializer() {
+      super(RawEntity.class);
+    }
+
+    @Override
+    public void serialize(RawEntity value, JsonGenerator gen, SerializerProvider provider)
+        throws IOException {
+      writeDocument(
+          value.document(),
+          value.descriptor(),
+          value.fields(),
+          EntityBase.BANNED_FIELDS,
+          gen,
+          provider);
+    }
+
+    private static void writeDocument(
+        BsonDocument document,
+        EntityDescriptor descriptor,
+        Set<String> fields,
+        Iterable<String> banned,
+        JsonGenerator gen,
+        SerializerProvider provider)
+        throws IOException {
+      var written = new HashSet<String>();
+      banned.forEach(written::add);
+
+      gen.writeStartObject();
+
+      for (var entry : document.entrySet()) {
+        var key = entry.getKey();
+        if (descriptor != null && descriptor.isIgnored(key)) {
+          continue;
+        }
+
+        var property = descriptor == null ? null : descriptor.getPropertyByBsonName(key);
+        var name = property == null ? key : property.jsonName();
+
+        if (!name.equals(key) && document.containsKey(name)) {
+          // overridden by the payload
+          continue;
+        }
+
+        if ((!fields.isEmpty() && !fields.contains(name)) || !written.add(name)) {
+          continue;
+        }
+
+        gen.writeFieldName(name);
+        writeValue(
+            entry.getValue(),
+            property == null ? null : property.getElementDescriptor(),
+            gen,
+            provider);
+      }
+
+      if (descriptor != null) {
+        Object defaults = null;
+        for (var property : descriptor.getProperties()) {
+          var name = property.jsonName();
+          if ((fields.isEmpty() || fields.contains(name)) && written.add(name)) {
+            if (defaults == null) {
+              defaults = descriptor.newDefaults();
+            }
+
+            gen.writeFieldName(name);
+            provider.defaultSerializeValue(property.defaultValue(defaults), gen);
+          }
+        }
+      }
+
+      gen.writeEndObject();
+    }
+
+    private static void writeValue(
+        BsonValue value,
+        EntityDescriptor descriptor,
+        JsonGenerator gen,
+        SerializerProvider provider)
+        throws IOException {
+      switch (value.getBsonType()) {
+        case DOCUMENT -> writeDocument(
+            value.asDocument(), descriptor, Set.of(), Set.of(), gen, provider);
+        case ARRAY -> {
+          gen.writeStartArray();
+          for (var item : value.asArray()) {
+            writeValue(item, descriptor, gen, provider);
+          }
+          gen.writeEndArray();
+        }
+        case STRING -> gen.writeString(value.asString().getValue());
+        case INT32 -> gen.writeNumber(value.asInt32().getValue());
+        case INT64 -> gen.writeNumber(value.asInt64().getValue());
+        case DOUBLE -> gen.writeNumber(value.asDouble().getValue());
+        case DECIMAL128 -> gen.writeNumber(value.asDecimal128().getValue().bigDecimalValue());
+        case BOOLEAN -> gen.writeBoolean(value.asBoolean().getValue());
+        case DATE_TIME -> provider.defaultSerializeDateValue(value.asDateTime().getValue(), gen);
+        case OBJECT_ID -> gen.writeString(value.asObjectId().getValue().toHexString());
+        case NULL, UNDEFINED -> gen.writeNull();
+        default -> provider.defaultSerializeValue(value, gen);
+      }
+    }
+  }
+}
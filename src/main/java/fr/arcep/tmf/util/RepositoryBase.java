@@ -1,12 +1,27 @@
 package fr.arcep.tmf.util;
 
-import io.micrometer.core.instrument.MeterRegistry;
-import io.quarkus.arc.Arc;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import fr.arcep.tmf.model.BulkResult;
 import io.quarkus.mongodb.panache.reactive.ReactivePanacheMongoRepositoryBase;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.validation.ConstraintViolationException;
-import jakarta.validation.Validator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonString;
+import org.bson.codecs.DecoderContext;
 
 public interface RepositoryBase<E extends EntityBase>
     extends ReactivePanacheMongoRepositoryBase<E, String> {
@@ -19,21 +34,40 @@ public interface RepositoryBase<E extends EntityBase>
     return Uni.createFrom().voidItem();
   }
 
+  /**
+   * Notify the creation of a batch of entities.
+   *
+   * <p>The notifications are sent concurrently, so the producer can batch them.
+   */
+  default Uni<Void> notifyCreateAll(List<E> entities) {
+    return Multi.createFrom()
+        .iterable(entities)
+        .onItem()
+        .transformToUniAndMerge(this::notifyCreate)
+        .collect()
+        .last()
+        .replaceWithVoid();
+  }
+
   default Uni<Void> notifyDelete(E entity) {
     return Uni.createFrom().voidItem();
   }
 
   default void validate(E entity) {
-    var validator = Arc.container().instance(Validator.class).get();
-    var violations = validator.validate(entity);
+    var violations = EntitySupport.validator().validate(entity);
     if (!violations.isEmpty()) {
       throw new ConstraintViolationException(violations);
     }
   }
 
   default void meterCount(String name, String domain) {
-    var meter = Arc.container().instance(MeterRegistry.class).get();
-    meter.counter(getMeterPrefix() + "." + name, "clientId", domain).increment();
+    meterCount(name, domain, 1);
+  }
+
+  default void meterCount(String name, String domain, int count) {
+    if (count > 0) {
+      EntitySupport.counter(getMeterPrefix(), name, domain).increment(count);
+    }
   }
 
   default E transform(E entity) {
@@ -41,17 +75,213 @@ public interface RepositoryBase<E extends EntityBase>
   }
 
   default Uni<E> persistAndNotify(Map<String, Object> data, String domain) {
+    return persistAndNotify(data, domain, t -> {});
+  }
+
+  /**
+   * Create an entity.
+   *
+   * @param data The input
+   * @param domain
+   * @param init Called on the entity before its validation, e.g. to set its id
+   * @return The created entity
+   */
+  default Uni<E> persistAndNotify(Map<String, Object> data, String domain, Consumer<E> init) {
     return Uni.createFrom()
         .item(data)
         .map(this::fromMap)
         .map(this::transform)
         .invoke(t -> t.domain = domain)
+        .invoke(init)
         .invoke(this::validate)
         .chain(this::persist)
         .call(this::notifyCreate)
         .invoke(() -> meterCount("create", domain));
   }
 
+  /**
+   * Create a batch of entities with a single unordered {@code insertMany}.
+   *
+   * <p>Each item is validated on its own: the invalid ones and the ones rejected by Mongo are
+   * reported as failed, the others are created and notified.
+   *
+   * @param data The items
+   * @param domain
+   * @return The result of each item, in the same order
+   */
+  default Uni<List<BulkResult>> persistAllAndNotify(List<Map<String, Object>> data, String domain) {
+    var results = new ArrayList<BulkResult>(data.size());
+    var entities = new ArrayList<E>();
+    var pending = new ArrayList<BulkResult>();
+
+    for (var i = 0; i < data.size(); i++) {
+      try {
+        var entity = transform(fromMap(data.get(i)));
+        entity.domain = domain;
+        validate(entity);
+
+        var result = BulkResult.created(i, entity.id);
+        entities.add(entity);
+        pending.add(result);
+        results.add(result);
+      } catch (RuntimeException e) {
+        results.add(BulkResult.failed(i, e.getMessage()));
+      }
+    }
+
+    if (entities.isEmpty()) {
+      return Uni.createFrom().item(results);
+    }
+
+    return mongoCollection()
+        .insertMany(entities, new InsertManyOptions().ordered(false))
+        .replaceWith(List.<BulkWriteError>of())
+        .onFailure(MongoBulkWriteException.class)
+        .recoverWithItem(e -> ((MongoBulkWriteException) e).getWriteErrors())
+        .chain(
+            errors -> {
+              var failed = new HashSet<Integer>();
+              for (var error : errors) {
+                var result = pending.get(error.getIndex());
+                result.id = null;
+                result.reason = error.getMessage();
+                failed.add(error.getIndex());
+              }
+
+              var created = new ArrayList<E>();
+              for (var i = 0; i < entities.size(); i++) {
+                if (!failed.contains(i)) {
+                  created.add(entities.get(i));
+                }
+              }
+
+              return notifyCreateAll(created)
+                  .invoke(() -> meterCount("create", domain, created.size()));
+            })
+        .replaceWith(results);
+  }
+
+  /**
+   * The fields only written when an entity is created by {@link #upsertAndNotify}, besides its id
+   * and creation date.
+   */
+  default List<String> getInsertOnlyFields() {
+    return List.of();
+  }
+
+  /**
+   * The fields of {@link #upsertAndNotify} computed from the stored entity, like a history. They
+   * replace the fields set from the input.
+   *
+   * @param entity The input, validated
+   * @return Aggregation expressions by field, evaluated on the stored entity, or on an empty one
+   *     when it is created
+   */
+  default BsonDocument getUpsertExpressions(E entity) {
+    return new BsonDocument();
+  }
+
+  /**
+   * Create or update the entity of a domain with a given key, with a single {@code findAndModify}.
+   *
+   * <p>The fields of the input are set, the other fields of an existing entity are kept. Only the
+   * creation is notified. The key should be backed by a unique index, so the concurrent calls with
+   * the same key do not create duplicates.
+   *
+   * @param data The input
+   * @param domain
+   * @param keyField The Mongo name of the key
+   * @param key
+   * @return The entity, and whether it was created
+   */
+  default Uni<Upserted<E>> upsertAndNotify(
+      Map<String, Object> data, String domain, String keyField, String key) {
+    var collection = mongoCollection();
+    var filter =
+        Filters.and(Filters.eq(EntityBase.DOMAIN_FIELD, domain), Filters.eq(keyField, key))
+            .toBsonDocument(BsonDocument.class, collection.getCodecRegistry());
+    var codec = collection.getCodecRegistry().get(collection.getDocumentClass());
+
+    return Uni.createFrom()
+        .item(data)
+        .map(this::fromMap)
+        .map(this::transform)
+        .invoke(t -> t.domain = domain)
+        .invoke(this::validate)
+        .chain(
+            entity ->
+                mongoDatabase()
+                    .runCommand(
+                        new BsonDocument(
+                                "findAndModify",
+                                new BsonString(collection.getNamespace().getCollectionName()))
+                            .append("query", filter)
+                            .append("update", toUpsert(entity, keyField, key))
+                            .append("upsert", BsonBoolean.TRUE)
+                            .append("new", BsonBoolean.TRUE),
+                        BsonDocument.class)
+                    // a concurrent upsert inserted the same key first, it is now an update
+                    .onFailure(t -> t instanceof MongoException e && e.getCode() == 11000)
+                    .retry()
+                    .atMost(1)
+                    .map(
+                        r ->
+                            new Upserted<>(
+                                codec.decode(
+                                    r.getDocument("value").asBsonReader(),
+                                    DecoderContext.builder().build()),
+                                r.getDocument("lastErrorObject").containsKey("upserted"))))
+        .call(u -> u.created() ? notifyCreate(u.entity()) : Uni.createFrom().voidItem())
+        .invoke(u -> meterCount(u.created() ? "create" : "update", domain));
+  }
+
+  /**
+   * The update pipeline of {@link #upsertAndNotify}: the input is set, except the insert only
+   * fields of an existing entity, then the {@link #getUpsertExpressions upsert expressions}.
+   */
+  private BsonArray toUpsert(E entity, String keyField, String key) {
+    var input = BsonDocumentWrapper.asBsonDocument(entity, mongoCollection().getCodecRegistry());
+    input.put("lastUpdate", new BsonDateTime(System.currentTimeMillis()));
+    input.put(keyField, new BsonString(key));
+
+    var insertOnly = new HashSet<>(getInsertOnlyFields());
+    insertOnly.add("_id");
+    insertOnly.add("creationDate");
+
+    // the fields of the document are missing while it is inserted
+    var created =
+        new BsonDocument(
+            "$eq",
+            new BsonArray(
+                List.of(
+                    new BsonDocument("$type", new BsonString("$_id")), new BsonString("missing"))));
+
+    var set = new BsonDocument();
+    for (var field : input.entrySet()) {
+      // a value is never read as an expression
+      var value = new BsonDocument("$literal", field.getValue());
+      set.put(
+          field.getKey(),
+          insertOnly.contains(field.getKey())
+              ? new BsonDocument(
+                  "$cond",
+                  new BsonArray(List.of(created, value, new BsonString("$" + field.getKey()))))
+              : value);
+    }
+
+    set.putAll(getUpsertExpressions(entity));
+
+    return new BsonArray(List.of(new BsonDocument("$set", set)));
+  }
+
+  /**
+   * The result of {@link #upsertAndNotify}.
+   *
+   * @param entity
+   * @param created {@code false} if an existing entity was updated
+   */
+  record Upserted<E>(E entity, boolean created) {}
+
   default Uni<Void> deleteAndNotify(E entity) {
     return delete(entity)
         .call(() -> this.notifyDelete(entity))
@@ -12,36 +12,66 @@ import fr.arcep.tmf.util.operator.Match;
 import fr.arcep.tmf.util.operator.NotEquals;
 import fr.arcep.tmf.util.operator.NotIn;
 import fr.arcep.tmf.util.operator.NotMatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.logging.Log;
 import io.quarkus.panache.common.Sort;
 import io.quarkus.panache.common.Sort.Direction;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.BadRequestException;
-import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.UriInfo;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.bson.Document;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 @ApplicationScoped
 public class TMFilter {
 
   /** List of query parameters which can not be searchable */
   public static final List<String> UNSEARCHABLE =
-      List.of("limit", "offset", "sort", "fields", "filter");
+      List.of("limit", "offset", "cursor", "sort", "fields", "filter");
 
-  private static final Pattern MATCHER_OPERATOR =
+  static final Pattern MATCHER_OPERATOR =
       Pattern.compile("^(?<key>[^\\[]+)\\[(?<operator>[^\\]]+)\\]$");
 
+  @Inject MeterRegistry meterRegistry;
+
+  @ConfigProperty(name = "tmf.filter.plan-cache-size", defaultValue = "256")
+  int planCacheSize;
+
+  private Map<Shape, FilterPlan> plans;
+  private Counter planCacheHit;
+  private Counter planCacheMiss;
+
+  @PostConstruct
+  void init() {
+    plans =
+        Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<Shape, FilterPlan> eldest) {
+                return size() > planCacheSize;
+              }
+            });
+
+    planCacheHit = meterRegistry.counter("tmFilter.planCache", "result", "hit");
+    planCacheMiss = meterRegistry.counter("tmFilter.planCache", "result", "miss");
+    meterRegistry.gaugeMapSize("tmFilter.planCache.size", List.of(), plans);
+  }
+
   /**
    * Filter fields of a map with the query parameter "fields"
    *
@@ -62,16 +92,7 @@ public class TMFilter {
    * @return A reduced map
    */
   public Map<String, Object> filterFields(Map<String, Object> map, List<String> fields) {
-    if (fields == null) {
-      return map;
-    }
-
-    var showedFields =
-        fields.stream()
-            .map(f -> Arrays.asList(f.split("\\s*,\\s*")))
-            .flatMap(List::stream)
-            .filter(f -> !f.isBlank())
-            .collect(Collectors.toList());
+    var showedFields = parseFields(fields);
 
     if (showedFields.isEmpty()) {
       return map;
@@ -82,6 +103,71 @@ public class TMFilter {
         .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
   }
 
+  /**
+   * Get the Mongo projection matching the query parameter "fields"
+   *
+   * <p>The projection only reduces what is read from Mongo: the output still has to be filtered
+   * with {@link #filterFields(Map, UriInfo)}, as the decoded entity fills the missing fields with
+   * their default value.
+   *
+   * @param uriInfo
+   * @param entityClass The class of the entity stored in the collection
+   * @return The projection, or empty if all the fields are requested
+   */
+  public Optional<Document> getProjection(UriInfo uriInfo, Class<?> entityClass) {
+    return getProjection(uriInfo.getQueryParameters(), entityClass);
+  }
+
+  /**
+   * Get the Mongo projection matching the query parameter "fields"
+   *
+   * @param queryParameters
+   * @param entityClass The class of the entity stored in the collection
+   * @return The projection, or empty if all the fields are requested
+   */
+  public Optional<Document> getProjection(
+      MultivaluedMap<String, String> queryParameters, Class<?> entityClass) {
+    var fields = getFields(queryParameters);
+
+    if (fields.isEmpty()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(EntityDescriptor.of(entityClass).getProjection(fields));
+  }
+
+  /**
+   * Get the fields requested with the query parameter "fields"
+   *
+   * @param uriInfo
+   * @return The fields, empty if all the fields are requested
+   */
+  public Set<String> getFields(UriInfo uriInfo) {
+    return getFields(uriInfo.getQueryParameters());
+  }
+
+  /**
+   * Get the fields requested with the query parameter "fields"
+   *
+   * @param queryParameters
+   * @return The fields, empty if all the fields are requested
+   */
+  public Set<String> getFields(MultivaluedMap<String, String> queryParameters) {
+    return parseFields(queryParameters.get("fields"));
+  }
+
+  private static Set<String> parseFields(List<String> fields) {
+    if (fields == null) {
+      return Set.of();
+    }
+
+    return fields.stream()
+        .map(f -> Arrays.asList(f.split("\\s*,\\s*")))
+        .flatMap(List::stream)
+        .filter(f -> !f.isBlank())
+        .collect(Collectors.toSet());
+  }
+
   /**
    * Get the sort from the query parameter "sort"
    *
@@ -123,64 +209,72 @@ public class TMFilter {
    * @return
    */
   public Optional<Sort> getSort(UriInfo uriInfo) {
-    return getSort(uriInfo.getQueryParameters().getFirst("sort"));
+    return getSort(uriInfo.getQueryParameters());
+  }
+
+  /**
+   * Get the sort from the query parameter "sort"
+   *
+   * @param queryParameters
+   * @return
+   */
+  public Optional<Sort> getSort(MultivaluedMap<String, String> queryParameters) {
+    return getSort(queryParameters.getFirst("sort"));
+  }
+
+  /**
+   * Convert a sort to its Mongo representation
+   *
+   * @param sort
+   * @return The sort document, e.g. {@code {"name": 1, "creationDate": -1}}
+   */
+  public static Document toDocument(Sort sort) {
+    var document = new Document();
+    sort.getColumns()
+        .forEach(c -> document.put(c.getName(), c.getDirection() == Direction.Ascending ? 1 : -1));
+
+    return document;
   }
 
   public Document process(Document document, MultivaluedMap<String, String> queryParameters) {
-    var filterMap = new MultivaluedHashMap<String, Filter>();
-
-    queryParameters.forEach(
-        (key, values) -> {
-          var matcher = MATCHER_OPERATOR.matcher(key);
-          if (matcher.matches()) {
-            var operator = SearchParser.fromString(matcher.group("operator"));
-            var keyName = matcher.group("key");
-            if (!UNSEARCHABLE.contains(keyName)) {
-              initFilterMap(filterMap, keyName, operator, values);
-            }
-          } else if (!UNSEARCHABLE.contains(key)) {
-            initFilterMap(filterMap, key, values);
-          }
-        });
-
-    filterMap.forEach(
-        (key, values) -> {
-          if (values.size() == 1) {
-            document.put(key, values.get(0).process());
-          } else {
-            var doc = new Document();
-            values.stream().map(Filter::process).forEach(d -> d.forEach(doc::put));
-            document.put(key, doc);
-          }
-        });
+    getPlan(queryParameters).bind(document, queryParameters);
 
     Log.debug("Mongo filter: " + document);
 
     return document;
   }
 
-  public static Object typeConvert(String value) {
-    try {
-      if (value.matches("^-?\\d+$")) {
-        return Double.parseDouble(value);
-      } else if (value.matches("^-?\\d+\\.\\d+$")) {
-        return Double.parseDouble(value);
-      } else if (value.matches("^-?\\d+\\.\\d+e-?\\d+$")) {
-        return Double.parseDouble(value);
-      } else if (value.matches("^\\d{4}-\\d{2}-\\d{2}$")) {
-        return Date.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant());
-      } else if (value.matches("^\\d{4}-\\d{2}-\\d{2}")) {
-        return Date.from(LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant());
-      } else if ("TRUE".equalsIgnoreCase(value)) {
-        return true;
-      } else if ("FALSE".equalsIgnoreCase(value)) {
-        return false;
-      }
-    } catch (Exception e) {
-      Log.warn("Unable to convert value to type: '" + value + "' (" + e.getMessage() + ")");
+  /**
+   * Get the compiled filter plan matching the shape of the query parameters
+   *
+   * @param queryParameters
+   * @return The cached plan, or a freshly compiled one
+   */
+  public FilterPlan getPlan(MultivaluedMap<String, String> queryParameters) {
+    var shape = Shape.of(queryParameters);
+    var plan = plans.get(shape);
+
+    if (plan != null) {
+      planCacheHit.increment();
+      return plan;
     }
 
-    return value;
+    planCacheMiss.increment();
+    plan = FilterPlan.compile(queryParameters, UNSEARCHABLE);
+    plans.put(shape, plan);
+
+    return plan;
+  }
+
+  /**
+   * Convert a filter value to its most specific type.
+   *
+   * @see TypeConverter
+   * @param value
+   * @return A number, a date, a boolean or the value itself
+   */
+  public static Object typeConvert(String value) {
+    return TypeConverter.convert(value);
   }
 
   public interface SearchOperator {
@@ -188,30 +282,45 @@ public class TMFilter {
   }
 
   public enum SearchParser {
-    EQUAL(Equals.class, List.of("eq", "==")),
-    NOT_EQUAL(NotEquals.class, List.of("ne", "!=", "<>")),
-    GREATER_THAN(GreaterThan.class, List.of("gt", ">")),
-    GREATER_THAN_OR_EQUAL(GreaterThanOrEqual.class, List.of("gte", ">=")),
-    LESS_THAN(LessThan.class, List.of("lt", "<")),
-    LESS_THAN_OR_EQUAL(LessThanOrEqual.class, List.of("lte", "<=")),
-    MATCH(Match.class, List.of("match", "regex", "=~")),
-    NOT_MATCH(NotMatch.class, List.of("notmatch", "notregex", "!~")),
-    IS(Is.class, List.of("is", "=")),
-    IS_NOT(IsNot.class, List.of("isnot", "isnt", "not", "nis", "!")),
-    IN(In.class, List.of("in")),
-    NOT_IN(NotIn.class, List.of("nin", "notin")),
+    EQUAL(new Equals(), List.of("eq", "==")),
+    NOT_EQUAL(new NotEquals(), List.of("ne", "!=", "<>")),
+    GREATER_THAN(new GreaterThan(), List.of("gt", ">")),
+    GREATER_THAN_OR_EQUAL(new GreaterThanOrEqual(), List.of("gte", ">=")),
+    LESS_THAN(new LessThan(), List.of("lt", "<")),
+    LESS_THAN_OR_EQUAL(new LessThanOrEqual(), List.of("lte", "<=")),
+    MATCH(new Match(), List.of("match", "regex", "=~")),
+    NOT_MATCH(new NotMatch(), List.of("notmatch", "notregex", "!~")),
+    IS(new Is(), List.of("is", "=")),
+    IS_NOT(new IsNot(), List.of("isnot", "isnt", "not", "nis", "!")),
+    IN(new In(), List.of("in")),
+    NOT_IN(new NotIn(), List.of("nin", "notin")),
     ;
 
-    private final Class<? extends SearchOperator> operatorClass;
+    /** Operators indexed by alias, built once at class initialization */
+    private static final Map<String, SearchParser> REGISTRY = new HashMap<>();
+
+    static {
+      for (var parser : values()) {
+        parser.aliases.forEach(alias -> REGISTRY.put(alias, parser));
+      }
+    }
+
+    private final SearchOperator operator;
     private final List<String> aliases;
 
-    SearchParser(Class<? extends SearchOperator> operatorClass, List<String> aliases) {
-      this.operatorClass = operatorClass;
+    SearchParser(SearchOperator operator, List<String> aliases) {
+      this.operator = operator;
       this.aliases = aliases;
     }
 
-    public Class<? extends SearchOperator> getOperatorClass() {
-      return operatorClass;
+    /**
+     * Get the operator implementation. Operators are stateless, so the same instance is shared by
+     * all the requests.
+     *
+     * @return
+     */
+    public SearchOperator getOperator() {
+      return operator;
     }
 
     public List<String> getAliases() {
@@ -219,48 +328,47 @@ public class TMFilter {
     }
 
     public static SearchParser fromString(String operator) {
-      for (var parser : SearchParser.values()) {
-        if (parser.getAliases().contains(operator.trim().toLowerCase())) {
-          return parser;
-        }
+      var parser = REGISTRY.get(operator);
+      if (parser == null) {
+        parser = REGISTRY.get(operator.trim().toLowerCase(Locale.ROOT));
+      }
+
+      if (parser == null) {
+        throw new BadRequestException("Unknown operator: " + operator);
       }
 
-      throw new BadRequestException("Unknown operator: " + operator);
+      return parser;
     }
   }
 
-  private void initFilterMap(
-      MultivaluedMap<String, Filter> filterMap,
-      String key,
-      SearchParser operator,
-      List<String> value) {
-    value.stream().map(v -> new Filter(operator, v)).forEach(f -> filterMap.add(key, f));
-  }
+  /**
+   * The shape of a query string: the sorted parameter names and the number of values of each of
+   * them.
+   */
+  private record Shape(String[] keys, int[] counts) {
 
-  private void initFilterMap(
-      MultivaluedMap<String, Filter> filterMap, String key, List<String> value) {
-    initFilterMap(filterMap, key, SearchParser.EQUAL, value);
-  }
+    static Shape of(MultivaluedMap<String, String> queryParameters) {
+      var keys = queryParameters.keySet().toArray(new String[0]);
+      Arrays.sort(keys);
 
-  private static class Filter {
-    private final SearchParser operator;
-    private final String value;
+      var counts = new int[keys.length];
+      for (var i = 0; i < keys.length; i++) {
+        counts[i] = queryParameters.get(keys[i]).size();
+      }
 
-    public Filter(SearchParser operator, String value) {
-      this.operator = operator;
-      this.value = value;
+      return new Shape(keys, counts);
     }
 
-    public Document process() {
-      try {
-        return operator.getOperatorClass().getConstructor().newInstance().getQuery(value);
-      } catch (Exception e) {
-        Log.errorf(
-            "can't instantiate operator '%s' : %s",
-            operator.getOperatorClass().getName(), e.getLocalizedMessage());
-        throw new BadRequestException(
-            "can't instantiate operator '" + operator.getOperatorClass().getName() + "'");
-      }
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Shape other
+          && Arrays.equals(keys, other.keys)
+          && Arrays.equals(counts, other.counts);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Arrays.hashCode(keys) + Arrays.hashCode(counts);
     }
   }
 }
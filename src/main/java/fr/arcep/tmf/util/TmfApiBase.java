@@ -1,21 +1,37 @@
 package fr.arcep.tmf.util;
 
+import fr.arcep.tmf.model.BulkResult;
 import fr.arcep.tmf.model.params.PaginateQuery;
+import fr.arcep.tmf.model.params.TotalCountMode;
+import io.quarkus.mongodb.AggregateOptions;
+import io.quarkus.mongodb.FindOptions;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Link;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.openapi.annotations.headers.Header;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
@@ -27,11 +43,24 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
 
   @Inject protected T repository;
 
+  @ConfigProperty(name = "tmf.bulk.batch-size", defaultValue = "500")
+  int bulkBatchSize;
+
+  /**
+   * Whether an exact total is computed with the page by a single {@code $facet} aggregation,
+   * instead of a {@code countDocuments} beside the find. See {@code PaginationBenchmark}.
+   */
+  @ConfigProperty(name = "tmf.pagination.facet", defaultValue = "false")
+  boolean facetPagination;
+
   protected HttpHeaders headers;
   protected Request request;
   protected UriInfo uriInfo;
   protected String clientId;
 
+  /** The call when the resource is called in-process, {@code null} for a HTTP request */
+  protected LocalCall localCall;
+
   @APIResponse(ref = "error-500")
   @APIResponse(ref = "error-501")
   @APIResponse(ref = "error-502")
@@ -42,44 +71,256 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
   @Parameter(ref = "offset")
   @Parameter(ref = "fields")
   @Parameter(ref = "X-Client-Id")
+  @Parameter(ref = "cursor")
+  @Parameter(ref = "X-Total-Count-Mode")
   public Uni<Response> find(@Valid PaginateQuery paginateQuery) {
-    var response = Response.status(Response.Status.PARTIAL_CONTENT);
-    var queryFilter = tmFilter.process(getQuery(), uriInfo.getQueryParameters());
-    var sort = tmFilter.getSort(uriInfo);
-    var query =
-        sort.isPresent()
-            ? repository.find(queryFilter.toJson(), sort.get())
-            : repository.find(queryFilter);
-
-    Multi<E> queryData =
-        paginateQuery.limit == 0
-            ? Multi.createFrom().empty()
-            : query.range(paginateQuery.offset, paginateQuery.limit - 1).stream();
-
-    return Uni.combine()
-        .all()
-        .unis(
-            query.count(),
-            queryData.map(E::toMap).map(t -> tmFilter.filterFields(t, uriInfo)).collect().asList())
-        .combinedWith(
-            (count, list) ->
-                response
-                    .header("X-Total-Count", count)
-                    .header("X-Result-Count", list.size())
-                    .entity(list)
-                    .build());
+    var queryParameters = getQueryParameters();
+    var queryFilter = tmFilter.process(getQuery(), queryParameters);
+    var sort = tmFilter.getSort(queryParameters).map(TMFilter::toDocument);
+    var projection = getProjection();
+    var fields = tmFilter.getFields(queryParameters);
+
+    return findPage(queryFilter, sort, projection, paginateQuery)
+        .map(
+            page -> {
+              var list = page.data().stream().map(d -> toOutput(d, fields)).toList();
+
+              var response =
+                  Response.status(Response.Status.PARTIAL_CONTENT)
+                      .header("X-Result-Count", list.size())
+                      .entity(list);
+
+              if (page.total() != null) {
+                response.header("X-Total-Count", page.total());
+              }
+
+              if (page.next() != null) {
+                response.header("X-Next-Cursor", page.next());
+              }
+
+              if (page.next() != null && uriInfo != null) {
+                response.links(
+                    Link.fromUriBuilder(
+                            uriInfo.getRequestUriBuilder().replaceQueryParam("cursor", page.next()))
+                        .rel("next")
+                        .build());
+              }
+
+              return response.build();
+            });
+  }
+
+  /**
+   * Fetch a page of resources and, depending on the requested mode, the total count.
+   *
+   * <p>The page is fetched by a find, which can use an index for the sort and the limit, and the
+   * total by a {@code countDocuments} run at the same time. When {@code tmf.pagination.facet} is
+   * enabled, an exact total and the page are computed by a single {@code $facet} aggregation
+   * instead. When a cursor is given, the page is fetched with a keyset pagination and the total is
+   * only counted for the first page.
+   *
+   * @param filter
+   * @param sort
+   * @param projection The fields to read, or empty to read the whole resources
+   * @param paginateQuery
+   * @return The page
+   */
+  protected Uni<Page<BsonDocument>> findPage(
+      Document filter,
+      Optional<Document> sort,
+      Optional<Document> projection,
+      PaginateQuery paginateQuery) {
+    var collection = repository.mongoCollection();
+    var mode = paginateQuery.totalCountMode;
+
+    if (paginateQuery.cursor != null) {
+      // the total is only counted for the first page, the next pages would count it again
+      var cursorMode = paginateQuery.cursor.isBlank() ? mode : TotalCountMode.NONE;
+
+      return Uni.combine()
+          .all()
+          .unis(countTotal(filter, cursorMode), findKeyset(filter, sort, projection, paginateQuery))
+          .combinedWith((total, page) -> new Page<>(total, page.data(), page.next()));
+    }
+
+    if (!facetPagination || mode != TotalCountMode.EXACT || paginateQuery.limit == 0) {
+      return Uni.combine()
+          .all()
+          .unis(countTotal(filter, mode), findRange(filter, sort, projection, paginateQuery))
+          .combinedWith((total, data) -> new Page<>(total, data, null));
+    }
+
+    var pipeline = new ArrayList<Document>();
+    pipeline.add(new Document("$match", filter));
+    sort.ifPresent(s -> pipeline.add(new Document("$sort", s)));
+    var range = new ArrayList<Document>();
+    range.add(new Document("$skip", paginateQuery.offset));
+    range.add(new Document("$limit", paginateQuery.limit));
+    projection.ifPresent(p -> range.add(new Document("$project", p)));
+    pipeline.add(
+        new Document(
+            "$facet",
+            new Document("data", range).append("total", List.of(new Document("$count", "count")))));
+
+    return collection
+        .aggregate(pipeline, BsonDocument.class, new AggregateOptions().allowDiskUse(true))
+        .collect()
+        .first()
+        .map(
+            result -> {
+              var total = result.getArray("total");
+              var count =
+                  total.isEmpty() ? 0L : total.get(0).asDocument().getNumber("count").longValue();
+
+              var data = result.getArray("data").stream().map(BsonValue::asDocument).toList();
+
+              return new Page<>(count, data, null);
+            });
+  }
+
+  /**
+   * Fetch the page following the cursor of the query, sorted by the requested sort and {@code _id}.
+   *
+   * <p>One more resource than the limit is fetched to know if there is a next page.
+   */
+  private Uni<Page<BsonDocument>> findKeyset(
+      Document filter,
+      Optional<Document> sort,
+      Optional<Document> projection,
+      PaginateQuery paginateQuery) {
+    if (paginateQuery.limit == 0) {
+      return Uni.createFrom().item(new Page<>(null, List.of(), null));
+    }
+
+    var keysetSort = KeysetCursor.keysetSort(sort.orElseGet(Document::new));
+    var query = filter;
+    if (!paginateQuery.cursor.isBlank()) {
+      var predicate = KeysetCursor.decode(paginateQuery.cursor, keysetSort).predicate();
+      query = filter.isEmpty() ? predicate : new Document("$and", List.of(filter, predicate));
+    }
+
+    var options = new FindOptions().sort(keysetSort).limit(paginateQuery.limit + 1);
+    projection.ifPresent(
+        p -> {
+          // the sort keys are needed to build the next cursor
+          var withKeys = new Document(p);
+          keysetSort.keySet().forEach(k -> withKeys.put(k, 1));
+          options.projection(withKeys);
+        });
+
+    return repository
+        .mongoCollection()
+        .find(query, BsonDocument.class, options)
+        .collect()
+        .asList()
+        .map(
+            documents -> {
+              String next = null;
+              if (documents.size() > paginateQuery.limit) {
+                documents = documents.subList(0, paginateQuery.limit);
+                next = KeysetCursor.after(keysetSort, documents.get(documents.size() - 1)).encode();
+              }
+
+              return new Page<>(null, documents, next);
+            });
+  }
+
+  private Uni<List<BsonDocument>> findRange(
+      Document filter,
+      Optional<Document> sort,
+      Optional<Document> projection,
+      PaginateQuery paginateQuery) {
+    if (paginateQuery.limit == 0) {
+      return Uni.createFrom().item(List.of());
+    }
+
+    var options = new FindOptions().skip(paginateQuery.offset).limit(paginateQuery.limit);
+    sort.ifPresent(options::sort);
+    projection.ifPresent(options::projection);
+
+    return repository
+        .mongoCollection()
+        .find(filter, BsonDocument.class, options)
+        .collect()
+        .asList();
+  }
+
+  /**
+   * Count the resources matching a filter.
+   *
+   * @return The total, or {@code null} in {@link TotalCountMode#NONE} mode
+   */
+  private Uni<Long> countTotal(Document filter, TotalCountMode mode) {
+    var collection = repository.mongoCollection();
+
+    return switch (mode) {
+      case NONE -> Uni.createFrom().nullItem();
+      case ESTIMATED -> filter.isEmpty()
+          ? collection.estimatedDocumentCount()
+          : collection.countDocuments(filter);
+      case EXACT -> collection.countDocuments(filter);
+    };
+  }
+
+  /**
+   * Get the Mongo projection of the "fields" query parameter
+   *
+   * @return The projection, or empty to read the whole resources
+   */
+  protected Optional<Document> getProjection() {
+    return tmFilter.getProjection(
+        getQueryParameters(), repository.mongoCollection().getDocumentClass());
+  }
+
+  /**
+   * Whether the resources are serialized straight from the Mongo documents, see {@link RawEntity},
+   * instead of being decoded and converted with {@link EntityBase#toMap()}.
+   *
+   * <p>Only enable it for entities whose JSON properties all map to a distinct Mongo name.
+   *
+   * @return {@code false} by default
+   */
+  protected boolean useRawJson() {
+    return false;
+  }
+
+  /**
+   * Convert a Mongo document to the output of the API.
+   *
+   * @param document
+   * @param fields The requested fields, empty for all the fields
+   * @return The resource to serialize
+   */
+  protected Object toOutput(BsonDocument document, Set<String> fields) {
+    if (useRawJson()) {
+      return new RawEntity(
+          document, EntityDescriptor.of(repository.mongoCollection().getDocumentClass()), fields);
+    }
+
+    var map = decode(document).toMap();
+    return fields.isEmpty() ? map : tmFilter.filterFields(map, List.copyOf(fields));
+  }
+
+  private E decode(BsonDocument document) {
+    var collection = repository.mongoCollection();
+    var codec = collection.getCodecRegistry().get(collection.getDocumentClass());
+
+    return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
   }
 
   @RestStreamElementType(MediaType.APPLICATION_JSON)
-  public Multi<Map<String, Object>> stream() {
-    var queryFilter = tmFilter.process(getQuery(), uriInfo.getQueryParameters());
-    var sort = tmFilter.getSort(uriInfo);
-    var query =
-        sort.isPresent()
-            ? repository.find(queryFilter.toJson(), sort.get())
-            : repository.find(queryFilter);
+  public Multi<Object> stream() {
+    var queryParameters = getQueryParameters();
+    var queryFilter = tmFilter.process(getQuery(), queryParameters);
+    var fields = tmFilter.getFields(queryParameters);
+    var options = new FindOptions();
+    tmFilter.getSort(queryParameters).map(TMFilter::toDocument).ifPresent(options::sort);
+    getProjection().ifPresent(options::projection);
 
-    return query.stream().map(E::toMap).map(t -> tmFilter.filterFields(t, uriInfo));
+    return repository
+        .mongoCollection()
+        .find(queryFilter, BsonDocument.class, options)
+        .map(d -> toOutput(d, fields));
   }
 
   @APIResponse(
@@ -93,7 +334,7 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
   @Parameter(ref = "X-Client-Id")
   public Uni<Response> count() {
     return Uni.createFrom()
-        .item(tmFilter.process(getQuery(), uriInfo.getQueryParameters()))
+        .item(tmFilter.process(getQuery(), getQueryParameters()))
         .chain(q -> repository.find(q).count())
         .map(count -> Response.noContent().header("X-Total-Count", count).build());
   }
@@ -105,6 +346,18 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
   @APIResponse(ref = "error-503")
   @Parameter(ref = "X-Client-Id")
   public Uni<Response> get(UUID id) {
+    if (useRawJson()) {
+      return repository
+          .mongoCollection()
+          .find(getQuery(id), BsonDocument.class)
+          .collect()
+          .first()
+          .onItem()
+          .ifNull()
+          .failWith(() -> new NotFoundException("Ressource not found"))
+          .map(d -> Response.ok(toOutput(d, Set.of())).build());
+    }
+
     return getEntityById(id).map(E::toMap).map(t -> Response.ok(t).build());
   }
 
@@ -134,6 +387,62 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
         .map(t -> Response.status(Response.Status.CREATED).entity(t).build());
   }
 
+  /**
+   * Create resources in bulk, from a JSON array or from NDJSON.
+   *
+   * <p>The body is read one item at a time and the items are inserted by batches of {@code
+   * tmf.bulk.batch-size}. The result of each item is streamed as soon as its batch is written.
+   *
+   * @param body
+   * @return The result of each item, in the order of the body
+   */
+  public Multi<BulkResult> createBulk(InputStream body) {
+    return Multi.createFrom()
+        .<BulkReader, BulkReader.Item>generator(
+            () -> new BulkReader(EntitySupport.objectMapper(), body),
+            (reader, emitter) -> {
+              var item = reader.next();
+              if (item == null) {
+                reader.close();
+                emitter.complete();
+              } else {
+                emitter.emit(item);
+              }
+              return reader;
+            })
+        .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+        .group()
+        .intoLists()
+        .of(bulkBatchSize)
+        .onItem()
+        .transformToUniAndConcatenate(this::createBatch)
+        .onItem()
+        .disjoint();
+  }
+
+  private Uni<List<BulkResult>> createBatch(List<BulkReader.Item> items) {
+    var valid = items.stream().filter(i -> i.error() == null).toList();
+
+    return repository
+        .persistAllAndNotify(valid.stream().map(BulkReader.Item::data).toList(), clientId)
+        .map(
+            created -> {
+              var results = new ArrayList<BulkResult>(items.size());
+              var it = created.iterator();
+              for (var item : items) {
+                if (item.error() != null) {
+                  results.add(BulkResult.failed(item.index(), item.error()));
+                } else {
+                  var result = it.next();
+                  result.index = item.index();
+                  results.add(result);
+                }
+              }
+
+              return results;
+            });
+  }
+
   protected List<String> getAdminClients() {
     return List.of("admin");
   }
@@ -158,7 +467,7 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
   }
 
   protected Document getQuery(String id) {
-    return getAdminClients().contains(clientId) && request.getMethod().equals("GET")
+    return getAdminClients().contains(clientId) && getMethod().equals("GET")
         ? new Document("_id", id)
         : Document.parse(
             String.format("{'%s': '%s', '_id': '%s'}", getDomainField(), clientId, id));
@@ -168,17 +477,53 @@ public abstract class TmfApiBase<E extends EntityBase, T extends RepositoryBase<
     return getQuery(id.toString());
   }
 
+  protected MultivaluedMap<String, String> getQueryParameters() {
+    return localCall != null ? localCall.queryParameters() : uriInfo.getQueryParameters();
+  }
+
+  protected String getHeader(String name) {
+    return localCall != null ? localCall.getHeader(name) : headers.getHeaderString(name);
+  }
+
+  protected String getMethod() {
+    return localCall != null ? localCall.method() : request.getMethod();
+  }
+
   protected void init(HttpHeaders headers, UriInfo uriInfo, Request request) {
     this.request = request;
     this.uriInfo = uriInfo;
     this.headers = headers;
 
-    clientId = headers.getHeaderString("X-Client-Id");
+    init(headers.getHeaderString("X-Client-Id"));
+  }
+
+  /**
+   * Initialize a resource called in-process, without a HTTP request.
+   *
+   * @param call
+   */
+  protected void init(LocalCall call) {
+    this.localCall = call;
+
+    init(call.clientId());
+  }
+
+  private void init(String clientId) {
+    this.clientId = clientId;
     if (clientId == null || clientId.isBlank()) {
       throw new UnauthorizedException("You are not authorized to access this resource");
     }
   }
 
+  /**
+   * A page of resources.
+   *
+   * @param total The total number of matching resources, {@code null} when not computed
+   * @param data The resources of the page
+   * @param next The cursor of the next page, {@code null} when there is none
+   */
+  protected record Page<E>(Long total, List<E> data, String next) {}
+
   public static class UnauthorizedException extends WebApplicationException {
     public UnauthorizedException(String message) {
       super(message, Response.Status.UNAUTHORIZED);
@@ -0,0 +1,243 @@
+package fr.arcep.tmf.util;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Infer the type of a filter value with a single pass over its characters.
+ *
+ * <p>Recognized types are, in order:
+ *
+ * <ul>
+ *   <li>integers ({@code -?\d+}) as {@link Integer} or {@link Long}, {@link Double} when longer
+ *       than 18 digits
+ *   <li>decimals ({@code -?\d+\.\d+}) and scientific numbers ({@code -?\d+\.\d+[eE][+-]?\d+}) as
+ *       {@link Double}
+ *   <li>ISO dates ({@code yyyy-MM-dd}) and datetimes ({@code
+ *       yyyy-MM-ddTHH:mm[:ss[.SSS]][Z|±HH:mm]}) as {@link Date}, in the system time zone when no
+ *       offset is given
+ *   <li>{@code true} and {@code false}, case insensitive, as {@link Boolean}
+ * </ul>
+ *
+ * Any other value is returned as is. No regex is compiled and no exception is thrown.
+ */
+final class TypeConverter {
+
+  private static final int MAX_LONG_DIGITS = 18;
+  private static final int MAX_OFFSET = 18 * 3600;
+
+  private TypeConverter() {}
+
+  static Object convert(String value) {
+    var length = value.length();
+    if (length == 0) {
+      return value;
+    }
+
+    var first = value.charAt(0);
+    if (first == '-' || isDigit(first)) {
+      var number = parseNumber(value);
+      if (number != null) {
+        return number;
+      }
+
+      var date = parseDate(value);
+      if (date != null) {
+        return date;
+      }
+    } else if (length == 4 && "true".equalsIgnoreCase(value)) {
+      return Boolean.TRUE;
+    } else if (length == 5 && "false".equalsIgnoreCase(value)) {
+      return Boolean.FALSE;
+    }
+
+    return value;
+  }
+
+  private static Number parseNumber(String value) {
+    var length = value.length();
+    var negative = value.charAt(0) == '-';
+    var i = negative ? 1 : 0;
+
+    var start = i;
+    var integral = 0L;
+    while (i < length && isDigit(value.charAt(i))) {
+      if (i - start < MAX_LONG_DIGITS) {
+        integral = integral * 10 + (value.charAt(i) - '0');
+      }
+      i++;
+    }
+
+    var digits = i - start;
+    if (digits == 0) {
+      return null;
+    }
+
+    if (i == length) {
+      if (digits > MAX_LONG_DIGITS) {
+        return Double.parseDouble(value);
+      }
+
+      integral = negative ? -integral : integral;
+      if (integral >= Integer.MIN_VALUE && integral <= Integer.MAX_VALUE) {
+        return (int) integral;
+      }
+
+      return integral;
+    }
+
+    if (value.charAt(i) != '.') {
+      return null;
+    }
+
+    i = skipDigits(value, i + 1);
+    if (i < 0) {
+      return null;
+    }
+
+    if (i < length) {
+      var c = value.charAt(i);
+      if (c != 'e' && c != 'E' || ++i == length) {
+        return null;
+      }
+
+      c = value.charAt(i);
+      if (c == '-' || c == '+') {
+        i++;
+      }
+
+      i = skipDigits(value, i);
+      if (i != length) {
+        return null;
+      }
+    }
+
+    return Double.parseDouble(value);
+  }
+
+  /**
+   * Skip at least one digit.
+   *
+   * @return The index of the first non digit character, or -1 when there is no digit at {@code
+   *     from}
+   */
+  private static int skipDigits(String value, int from) {
+    var i = from;
+    while (i < value.length() && isDigit(value.charAt(i))) {
+      i++;
+    }
+
+    return i == from ? -1 : i;
+  }
+
+  private static Date parseDate(String value) {
+    var length = value.length();
+    if (length < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+      return null;
+    }
+
+    var year = readInt(value, 0, 4);
+    var month = readInt(value, 5, 2);
+    var day = readInt(value, 8, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1) {
+      return null;
+    }
+
+    if (day > Month.of(month).length(Year.isLeap(year))) {
+      return null;
+    }
+
+    if (length == 10) {
+      return toDate(LocalDateTime.of(year, month, day, 0, 0), ZoneId.systemDefault());
+    }
+
+    if (length < 16 || value.charAt(10) != 'T' || value.charAt(13) != ':') {
+      return null;
+    }
+
+    var hour = readInt(value, 11, 2);
+    var minute = readInt(value, 14, 2);
+    var second = 0;
+    var nano = 0;
+    var i = 16;
+
+    if (i < length && value.charAt(i) == ':') {
+      second = readInt(value, i + 1, 2);
+      i += 3;
+
+      if (i < length && value.charAt(i) == '.') {
+        var end = skipDigits(value, ++i);
+        if (end < 0 || end - i > 9) {
+          return null;
+        }
+
+        nano = readInt(value, i, end - i);
+        for (var d = end - i; d < 9; d++) {
+          nano *= 10;
+        }
+
+        i = end;
+      }
+    }
+
+    if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return null;
+    }
+
+    ZoneId zone = ZoneId.systemDefault();
+    if (i < length) {
+      var c = value.charAt(i);
+      if (c == 'Z' && i + 1 == length) {
+        zone = ZoneOffset.UTC;
+      } else if ((c == '+' || c == '-') && i + 6 == length && value.charAt(i + 3) == ':') {
+        var offsetHours = readInt(value, i + 1, 2);
+        var offsetMinutes = readInt(value, i + 4, 2);
+        var offset = offsetHours * 3600 + offsetMinutes * 60;
+        if (offsetHours < 0 || offsetMinutes < 0 || offsetMinutes > 59 || offset > MAX_OFFSET) {
+          return null;
+        }
+
+        zone = ZoneOffset.ofTotalSeconds(c == '-' ? -offset : offset);
+      } else {
+        return null;
+      }
+    }
+
+    return toDate(LocalDateTime.of(year, month, day, hour, minute, second, nano), zone);
+  }
+
+  private static Date toDate(LocalDateTime dateTime, ZoneId zone) {
+    return Date.from(dateTime.atZone(zone).toInstant());
+  }
+
+  /**
+   * Read a fixed length unsigned integer.
+   *
+   * @return The integer, or -1 when the substring is out of bounds or is not only made of digits
+   */
+  private static int readInt(String value, int from, int length) {
+    if (from + length > value.length()) {
+      return -1;
+    }
+
+    var result = 0;
+    for (var i = from; i < from + length; i++) {
+      var c = value.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+
+      result = result * 10 + (c - '0');
+    }
+
+    return result;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
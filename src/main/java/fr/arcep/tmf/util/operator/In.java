@@ -6,10 +6,11 @@ import org.bson.Document;
 
 public class In implements TMFilter.SearchOperator {
 
+  private static final Pattern SEPARATOR = Pattern.compile("\\s*,\\s*");
+
   @Override
   public Document getQuery(String value) {
-    var values =
-        Pattern.compile("\\s*,\\s*").splitAsStream(value).map(TMFilter::typeConvert).toList();
+    var values = SEPARATOR.splitAsStream(value).map(TMFilter::typeConvert).toList();
     return new Document("$in", values);
   }
 }
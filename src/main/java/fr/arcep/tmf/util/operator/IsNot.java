@@ -5,9 +5,10 @@ import org.bson.Document;
 
 public class IsNot implements TMFilter.SearchOperator {
 
+  private static final Is IS = new Is();
+
   @Override
   public Document getQuery(String value) {
-    var is = new Is();
-    return new Document("$not", is.getQuery(value));
+    return new Document("$not", IS.getQuery(value));
   }
 }
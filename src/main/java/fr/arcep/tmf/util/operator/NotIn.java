@@ -5,9 +5,10 @@ import org.bson.Document;
 
 public class NotIn implements TMFilter.SearchOperator {
 
+  private static final In IN = new In();
+
   @Override
   public Document getQuery(String value) {
-    var in = new In();
-    return new Document("$not", in.getQuery(value));
+    return new Document("$not", IN.getQuery(value));
   }
 }
@@ -5,9 +5,10 @@ import org.bson.Document;
 
 public class NotMatch implements TMFilter.SearchOperator {
 
+  private static final Match MATCH = new Match();
+
   @Override
   public Document getQuery(String value) {
-    var regex = new Match();
-    return new Document("$not", regex.getQuery(value));
+    return new Document("$not", MATCH.getQuery(value));
   }
 }
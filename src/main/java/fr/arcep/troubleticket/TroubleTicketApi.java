@@ -0,0 +1,33 @@
+package fr.arcep.troubleticket;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import java.util.UUID;
+
+/**
+ * The trouble ticket API, as called by the proxies.
+ *
+ * <p>{@link TroubleTicketLocalService} calls it in-process, {@link TroubleTicketService} over HTTP.
+ */
+public interface TroubleTicketApi {
+
+  Uni<Response> list(String clientId, MultivaluedMap<String, String> query);
+
+  Multi<Object> stream(String clientId, MultivaluedMap<String, String> query);
+
+  /** The stream, as the JSON text of each event. */
+  Multi<String> streamRaw(String clientId, MultivaluedMap<String, String> query);
+
+  Uni<Response> count(String clientId, MultivaluedMap<String, String> query);
+
+  Uni<Response> get(String clientId, UUID id);
+
+  Uni<Response> create(String clientId, Object troubleTicket);
+
+  /** Create or update the trouble ticket of the client with an external id. */
+  Uni<Response> upsert(String clientId, String externalId, Object troubleTicket);
+
+  Uni<Response> delete(String clientId, UUID id);
+}
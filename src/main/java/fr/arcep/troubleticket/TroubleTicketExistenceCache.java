@@ -0,0 +1,133 @@
+package fr.arcep.troubleticket;
+
+import fr.arcep.ExceptionMappers;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Incoming;
+
+/**
+ * The trouble tickets recently found by a client, so the proxies of their sub-resources do not
+ * check it exists and is allowed on every request.
+ *
+ * <p>A check only counts the tickets of the client with its id, without reading it. Only the
+ * successful checks are kept, for {@code tmf.troubleticket.existence-cache.ttl}, the least recently
+ * used ones being dropped past {@code tmf.troubleticket.existence-cache.max-size}. The concurrent
+ * checks of a ticket share a single call. The deleted tickets are dropped on every node: each one
+ * reads the {@code trouble-ticket-delete} topic with its own consumer group.
+ */
+@ApplicationScoped
+public class TroubleTicketExistenceCache {
+
+  @Inject TroubleTicketApi troubleTicketService;
+
+  /** How long a ticket is known to exist, {@code 0} to disable the cache */
+  @ConfigProperty(name = "tmf.troubleticket.existence-cache.ttl", defaultValue = "PT30S")
+  Duration ttl;
+
+  /** The maximum number of tickets kept */
+  @ConfigProperty(name = "tmf.troubleticket.existence-cache.max-size", defaultValue = "10000")
+  int maxSize;
+
+  /** In access order, guarded by itself */
+  private Map<Key, Entry> entries;
+
+  private record Key(String clientId, String id) {}
+
+  @PostConstruct
+  void init() {
+    entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  /**
+   * A check, shared by its concurrent callers.
+   *
+   * @param check The memoized call
+   * @param expiresAt The {@link System#nanoTime()} after which the ticket is checked again
+   */
+  private record Entry(Uni<Void> check, long expiresAt) {}
+
+  /**
+   * Check that a trouble ticket exists and is allowed for a client.
+   *
+   * @param clientId
+   * @param id
+   * @return A failure with the error response of the trouble ticket API if it is not
+   */
+  public Uni<Void> check(String clientId, UUID id) {
+    if (ttl.isZero()) {
+      return load(clientId, id);
+    }
+
+    var key = new Key(clientId, id.toString());
+    var now = System.nanoTime();
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry == null || now - entry.expiresAt() >= 0) {
+        entry = new Entry(load(clientId, id).memoize().indefinitely(), now + ttl.toNanos());
+        entries.put(key, entry);
+      }
+    }
+
+    var checked = entry;
+    return checked.check().onFailure().invoke(() -> remove(key, checked));
+  }
+
+  /**
+   * Drop a trouble ticket, for all the clients.
+   *
+   * @param id
+   */
+  public void invalidate(String id) {
+    synchronized (entries) {
+      entries.keySet().removeIf(k -> k.id().equals(id));
+    }
+  }
+
+  @Incoming("trouble-ticket-existence")
+  public void onDelete(String id) {
+    invalidate(id);
+  }
+
+  private Uni<Void> load(String clientId, UUID id) {
+    var query = new MultivaluedHashMap<String, String>();
+    query.putSingle("_id", id.toString());
+
+    return troubleTicketService
+        .count(clientId, query)
+        .invoke(
+            r -> {
+              if (r.getStatus() >= 400) {
+                throw new WebApplicationException(r);
+              }
+
+              if ("0".equals(r.getHeaderString("X-Total-Count"))) {
+                throw new WebApplicationException(
+                    ExceptionMappers.toResponse(new NotFoundException("Ressource not found")));
+              }
+            })
+        .replaceWithVoid();
+  }
+
+  private void remove(Key key, Entry entry) {
+    synchronized (entries) {
+      entries.remove(key, entry);
+    }
+  }
+}
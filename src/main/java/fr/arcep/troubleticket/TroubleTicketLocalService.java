@@ -0,0 +1,41 @@
+package fr.arcep.troubleticket;
+
+import fr.arcep.tmf.util.LocalCall;
+import fr.arcep.tmf.util.LocalServiceBase;
+import io.quarkus.arc.DefaultBean;
+import io.quarkus.arc.Unremovable;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Dependent;
+import jakarta.enterprise.inject.Typed;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * The trouble ticket API called in-process, through {@link TroubleTicketResource}.
+ *
+ * <p>It is replaced by {@link TroubleTicketService} when built with {@code
+ * tmf.services.transport=http}.
+ */
+@DefaultBean
+@ApplicationScoped
+public class TroubleTicketLocalService extends LocalServiceBase<TroubleTicketResource>
+    implements TroubleTicketApi {
+
+  @Override
+  protected Class<Local> resourceType() {
+    return Local.class;
+  }
+
+  @Override
+  public Uni<Response> upsert(String clientId, String externalId, Object troubleTicket) {
+    return call(
+        () ->
+            resource(LocalCall.of(clientId, "PUT", null)).upsert(externalId, toMap(troubleTicket)));
+  }
+
+  /** The resource of a call, injected as the one of a request. It is only looked up. */
+  @Unremovable
+  @Dependent
+  @Typed(Local.class)
+  static class Local extends TroubleTicketResource {}
+}
@@ -1,21 +1,66 @@
 package fr.arcep.troubleticket;
 
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import fr.arcep.tmf.model.StatusChange;
+import fr.arcep.tmf.util.EntityBase;
 import fr.arcep.tmf.util.RepositoryBase;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.reactive.messaging.MutinyEmitter;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonString;
+import org.bson.BsonType;
 import org.eclipse.microprofile.reactive.messaging.Channel;
 
 @ApplicationScoped
 public class TroubleTicketRepository implements RepositoryBase<TroubleTicketEntity> {
 
+  public static final String EXTERNAL_ID_FIELD = "externalId";
+
+  private static final Duration INDEX_TIMEOUT = Duration.ofSeconds(30);
+
   @Channel("trouble-ticket-create")
   MutinyEmitter<TroubleTicketNotification> createEmitter;
 
   @Channel("trouble-ticket-delete")
   MutinyEmitter<String> deleteEmitter;
 
+  /**
+   * The external ids are unique in a domain, see {@link #upsertAndNotify}.
+   *
+   * <p>The upserts would create duplicates without this index, so the application does not start
+   * when it can not be created.
+   */
+  void onStart(@Observes StartupEvent event) {
+    var index =
+        mongoCollection()
+            .createIndex(
+                Indexes.ascending(EntityBase.DOMAIN_FIELD, EXTERNAL_ID_FIELD),
+                new IndexOptions()
+                    .unique(true)
+                    .partialFilterExpression(Filters.type(EXTERNAL_ID_FIELD, BsonType.STRING)))
+            .onFailure()
+            .transform(
+                t ->
+                    new IllegalStateException(
+                        "Unable to create the unique index of the external ids", t))
+            .await()
+            .atMost(INDEX_TIMEOUT);
+
+    Log.debugf("Index %s ready", index);
+  }
+
   @Override
   public String getMeterPrefix() {
     return "troubleTickets";
@@ -26,6 +71,54 @@ public class TroubleTicketRepository implements RepositoryBase<TroubleTicketEnti
     return TroubleTicketEntity.fromMap(map);
   }
 
+  @Override
+  public List<String> getInsertOnlyFields() {
+    return List.of("resolutionDate", "closed", "statusChange");
+  }
+
+  /**
+   * Add the status of the input to the history when it changes, or when the ticket is created, in
+   * the same update as the input.
+   */
+  @Override
+  public BsonDocument getUpsertExpressions(TroubleTicketEntity entity) {
+    if (entity.status == null) {
+      return new BsonDocument();
+    }
+
+    var change =
+        new StatusChange(
+            entity.status,
+            entity.statusChangeDate != null ? entity.statusChangeDate : new Date(),
+            entity.statusChangeReason);
+    var changes =
+        new BsonArray(
+            List.of(
+                BsonDocumentWrapper.asBsonDocument(change, mongoCollection().getCodecRegistry())));
+
+    var changed =
+        new BsonDocument(
+            "$ne",
+            new BsonArray(
+                List.of(
+                    new BsonString("$status"),
+                    new BsonDocument("$literal", new BsonString(entity.status)))));
+    var appended =
+        new BsonDocument(
+            "$concatArrays",
+            new BsonArray(
+                List.of(
+                    new BsonDocument(
+                        "$ifNull",
+                        new BsonArray(List.of(new BsonString("$statusChange"), new BsonArray()))),
+                    new BsonDocument("$literal", changes))));
+
+    return new BsonDocument(
+        "statusChange",
+        new BsonDocument(
+            "$cond", new BsonArray(List.of(changed, appended, new BsonString("$statusChange")))));
+  }
+
   @Override
   public Uni<Void> notifyCreate(TroubleTicketEntity entity) {
     return createEmitter.send(new TroubleTicketNotification(entity));
@@ -1,12 +1,15 @@
 package fr.arcep.troubleticket;
 
 import fr.arcep.OpenAPI;
+import fr.arcep.tmf.model.BulkResult;
 import fr.arcep.tmf.model.TroubleTicket;
 import fr.arcep.tmf.model.params.PaginateQuery;
 import fr.arcep.tmf.util.TmfApiBase;
+import io.smallrye.common.annotation.Blocking;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.BeanParam;
 import jakarta.ws.rs.Consumes;
@@ -14,6 +17,7 @@ import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HEAD;
 import jakarta.ws.rs.POST;
+import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Context;
@@ -22,6 +26,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.UUID;
 import org.eclipse.microprofile.openapi.annotations.Operation;
@@ -29,10 +34,12 @@ import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.headers.Header;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
 @Path("/api/troubleTicket")
 @Tag(ref = "Trouble Ticket API")
@@ -40,10 +47,19 @@ import org.jboss.resteasy.reactive.RestStreamElementType;
 public class TroubleTicketResource
     extends TmfApiBase<TroubleTicketEntity, TroubleTicketRepository> {
 
+  @Inject
   public TroubleTicketResource(HttpHeaders headers, @Context UriInfo uriInfo, Request request) {
     init(headers, uriInfo, request);
   }
 
+  /** A resource called in-process, see {@link TroubleTicketLocalService}. */
+  TroubleTicketResource() {}
+
+  @Override
+  protected boolean useRawJson() {
+    return true;
+  }
+
   @GET
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.APPLICATION_JSON)
@@ -60,7 +76,11 @@ public class TroubleTicketResource
       """)
   @APIResponse(
       responseCode = "200",
-      headers = {@Header(ref = "X-Total-Count"), @Header(ref = "X-Result-Count")},
+      headers = {
+        @Header(ref = "X-Total-Count"),
+        @Header(ref = "X-Result-Count"),
+        @Header(ref = "X-Next-Cursor")
+      },
       content =
           @Content(
               mediaType = MediaType.APPLICATION_JSON,
@@ -88,7 +108,7 @@ public class TroubleTicketResource
               mediaType = MediaType.SERVER_SENT_EVENTS,
               schema = @Schema(implementation = TroubleTicket.class)))
   @Override
-  public Multi<Map<String, Object>> stream() {
+  public Multi<Object> stream() {
     return super.stream();
   }
 
@@ -161,4 +181,90 @@ public class TroubleTicketResource
   public Uni<Response> create(Map<String, Object> troubleTicket) {
     return super.create(troubleTicket);
   }
+
+  @PUT
+  @Path("external/{externalId}")
+  @Operation(
+      summary = "Create or update a trouble ticket by its external id.",
+      description =
+          """
+      This endpoint is used to import the trouble tickets of another system, and can be retried.
+
+      The trouble ticket of the domain specified in the header `X-Client-Id` with this
+      `externalId` is created, or updated if it exists: the fields of the input are set,
+      the other ones are kept. The `externalId` of the input is ignored.
+      A new `status` is added to the `statusChange` history.
+      """)
+  @RequestBody(
+      description = "The trouble ticket to create or update.",
+      required = true,
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(implementation = TroubleTicket.class)))
+  @APIResponse(
+      responseCode = "200",
+      description = "The trouble ticket has been updated.",
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(implementation = TroubleTicket.class)))
+  @APIResponse(
+      responseCode = "201",
+      description = "The trouble ticket has been created.",
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(implementation = TroubleTicket.class)))
+  @APIResponse(ref = "error-400")
+  @APIResponse(ref = "error-500")
+  @Parameter(ref = "X-Client-Id")
+  public Uni<Response> upsert(String externalId, Map<String, Object> troubleTicket) {
+    return repository
+        .upsertAndNotify(
+            troubleTicket, clientId, TroubleTicketRepository.EXTERNAL_ID_FIELD, externalId)
+        .map(
+            u ->
+                Response.status(u.created() ? Response.Status.CREATED : Response.Status.OK)
+                    .entity(u.entity().toMap())
+                    .build());
+  }
+
+  @POST
+  @Path("bulk")
+  @Consumes({MediaType.APPLICATION_JSON, RestMediaType.APPLICATION_NDJSON})
+  @Produces(RestMediaType.APPLICATION_NDJSON)
+  @RestStreamElementType(MediaType.APPLICATION_JSON)
+  @Blocking
+  @Operation(
+      summary = "Create trouble tickets in bulk.",
+      description =
+          """
+      This endpoint is used to import a large number of trouble tickets.
+
+      The body is either a JSON array or NDJSON, one trouble ticket per line.
+      Each trouble ticket is validated on its own and the valid ones are created,
+      assigned to the domain specified in the header `X-Client-Id`.
+
+      The response is a stream of results, one per trouble ticket and in the same order,
+      holding either the `id` of the created trouble ticket or the `reason` of the failure.
+      """)
+  @RequestBody(
+      description = "The trouble tickets to create.",
+      required = true,
+      content =
+          @Content(
+              mediaType = MediaType.APPLICATION_JSON,
+              schema = @Schema(type = SchemaType.ARRAY, implementation = TroubleTicket.class)))
+  @APIResponse(
+      responseCode = "200",
+      description = "The result of each trouble ticket.",
+      content =
+          @Content(
+              mediaType = RestMediaType.APPLICATION_NDJSON,
+              schema = @Schema(implementation = BulkResult.class)))
+  @Override
+  public Multi<BulkResult> createBulk(InputStream body) {
+    return super.createBulk(body);
+  }
 }
@@ -8,6 +8,7 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HEAD;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
+import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
@@ -15,15 +16,18 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import java.util.UUID;
+import org.eclipse.microprofile.rest.client.annotation.RegisterClientHeaders;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
+@RegisterClientHeaders
 @RegisterRestClient(configKey = "troubleTicketService")
 @Path("/api/troubleTicket")
-public interface TroubleTicketService {
+public interface TroubleTicketService extends TroubleTicketApi {
 
   @GET
+  @Override
   Uni<Response> list(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
@@ -31,21 +35,42 @@ public interface TroubleTicketService {
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.SERVER_SENT_EVENTS)
   @RestStreamElementType(MediaType.APPLICATION_JSON)
+  @Override
   Multi<Object> stream(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
+  @GET
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.SERVER_SENT_EVENTS)
+  @RestStreamElementType(MediaType.TEXT_PLAIN)
+  @Override
+  Multi<String> streamRaw(
+      @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
+
   @HEAD
+  @Override
   Uni<Response> count(
       @HeaderParam("X-Client-Id") String clientId, @RestQuery MultivaluedMap<String, String> query);
 
   @GET
   @Path("/{id}")
+  @Override
   Uni<Response> get(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 
   @POST
+  @Override
   Uni<Response> create(@HeaderParam("X-Client-Id") String clientId, Object troubleTicket);
 
+  @PUT
+  @Path("external/{externalId}")
+  @Override
+  Uni<Response> upsert(
+      @HeaderParam("X-Client-Id") String clientId,
+      @PathParam("externalId") String externalId,
+      Object troubleTicket);
+
   @DELETE
   @Path("/{id}")
+  @Override
   Uni<Response> delete(@HeaderParam("X-Client-Id") String clientId, @PathParam("id") UUID id);
 }
@@ -0,0 +1,171 @@
+package fr.arcep.attachment;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+import io.restassured.specification.RequestSpecification;
+import jakarta.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(AttachmentCacheTest.CacheProfile.class)
+public class AttachmentCacheTest {
+
+  public static class CacheProfile implements QuarkusTestProfile {
+    @Override
+    public Map<String, String> getConfigOverrides() {
+      return Map.of("tmf.attachment.cache.enabled", "true");
+    }
+  }
+
+  private static String baseUrl = "/api/attachment";
+
+  @Inject AttachmentRepository repository;
+
+  @Inject AttachmentContentCache cache;
+
+  @Inject MeterRegistry meterRegistry;
+
+  private File file;
+
+  private byte[] content;
+
+  private RequestSpecification given() {
+    return RestAssured.given().basePath(baseUrl);
+  }
+
+  /** The logo followed by random bytes, so its content is not shared with the other tests */
+  @BeforeEach
+  public void init() throws IOException {
+    repository.deleteAll().await().indefinitely();
+
+    var logo =
+        this.getClass().getResourceAsStream("/quarkus_blogpost_formallogo.png").readAllBytes();
+    var suffix = UUID.randomUUID().toString().getBytes(StandardCharsets.US_ASCII);
+    content = Arrays.copyOf(logo, logo.length + suffix.length);
+    System.arraycopy(suffix, 0, content, logo.length, suffix.length);
+
+    file = File.createTempFile("attachment", ".png");
+    file.deleteOnExit();
+    Files.write(file.toPath(), content);
+  }
+
+  private String upload() {
+    return given()
+        .headers("X-Client-Id", "test")
+        .multiPart("attachment", "{\"name\": \"logo.png\"}", "application/json")
+        .multiPart("file", file, "multipart/form-data")
+        .when()
+        .post()
+        .then()
+        .statusCode(201)
+        .extract()
+        .path("id");
+  }
+
+  private byte[] download(String id, int status) {
+    return given()
+        .headers("X-Client-Id", "test")
+        .when()
+        .get(id + "/content")
+        .then()
+        .statusCode(status)
+        .header("Content-Length", is(String.valueOf(content.length)))
+        .extract()
+        .asByteArray();
+  }
+
+  private double count(String result) {
+    return meterRegistry.counter("attachments.cache", "result", result).count();
+  }
+
+  private double saved() {
+    return meterRegistry.get("attachments.cache.saved").counter().count();
+  }
+
+  /** Wait for the background copy of the first download. */
+  private void awaitCopy(long before) throws InterruptedException {
+    for (var i = 0; i < 100 && cache.getSize() < before + content.length; i++) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(before + content.length, cache.getSize());
+  }
+
+  @Test
+  public void testMissThenHit() throws InterruptedException {
+    var id = upload();
+    var hits = count("hit");
+    var misses = count("miss");
+    var saved = saved();
+    var size = cache.getSize();
+
+    // read from S3, then copied in the background
+    assertArrayEquals(content, download(id, 200));
+    assertEquals(misses + 1, count("miss"));
+    assertEquals(hits, count("hit"));
+
+    awaitCopy(size);
+
+    // sent from the copy
+    assertArrayEquals(content, download(id, 200));
+    assertEquals(hits + 1, count("hit"));
+    assertEquals(misses + 1, count("miss"));
+    assertEquals(saved + content.length, saved());
+  }
+
+  @Test
+  public void testRangeHit() throws InterruptedException {
+    var id = upload();
+    var size = cache.getSize();
+    download(id, 200);
+    awaitCopy(size);
+    var saved = saved();
+
+    var range =
+        given()
+            .headers("X-Client-Id", "test")
+            .headers("Range", "bytes=100-199")
+            .when()
+            .get(id + "/content")
+            .then()
+            .statusCode(206)
+            .header("Content-Range", is("bytes 100-199/" + content.length))
+            .extract()
+            .asByteArray();
+
+    assertArrayEquals(Arrays.copyOfRange(content, 100, 200), range);
+    assertEquals(saved + 100, saved());
+  }
+
+  @Test
+  public void testInvalidate() throws InterruptedException {
+    var id = upload();
+    var size = cache.getSize();
+    download(id, 200);
+    awaitCopy(size);
+
+    var entity = repository.findById(id).await().indefinitely();
+    cache.invalidate("test", entity.objectKey());
+    assertEquals(size, cache.getSize());
+
+    // read from S3 again
+    var misses = count("miss");
+    assertArrayEquals(content, download(id, 200));
+    assertEquals(misses + 1, count("miss"));
+  }
+}
@@ -0,0 +1,291 @@
+package fr.arcep.attachment;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.quarkus.arc.ClientProxy;
+import io.quarkus.test.junit.QuarkusMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+import io.restassured.path.json.JsonPath;
+import io.restassured.specification.RequestSpecification;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+@QuarkusTest
+@TestProfile(AttachmentPresignedTest.PresignProfile.class)
+public class AttachmentPresignedTest {
+
+  public static class PresignProfile implements QuarkusTestProfile {
+    @Override
+    public Map<String, String> getConfigOverrides() {
+      return Map.of("tmf.attachment.presign.enabled", "true");
+    }
+  }
+
+  /** Sends another content to the pending key right before it is copied. */
+  static class RacingS3Client implements S3AsyncClient {
+
+    private final S3AsyncClient delegate;
+
+    private final byte[] replacement;
+
+    private final AtomicBoolean raced = new AtomicBoolean();
+
+    RacingS3Client(S3AsyncClient delegate, byte[] replacement) {
+      this.delegate = delegate;
+      this.replacement = replacement;
+    }
+
+    @Override
+    public CompletableFuture<HeadObjectResponse> headObject(HeadObjectRequest request) {
+      return delegate.headObject(request);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getObject(
+        GetObjectRequest request, AsyncResponseTransformer<GetObjectResponse, T> transformer) {
+      return delegate.getObject(request, transformer);
+    }
+
+    @Override
+    public CompletableFuture<CopyObjectResponse> copyObject(CopyObjectRequest request) {
+      if (raced.getAndSet(true)) {
+        return delegate.copyObject(request);
+      }
+
+      var put =
+          PutObjectRequest.builder()
+              .bucket(request.sourceBucket())
+              .key(request.sourceKey())
+              .build();
+      return delegate
+          .putObject(put, AsyncRequestBody.fromBytes(replacement))
+          .thenCompose(r -> delegate.copyObject(request));
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectResponse> deleteObject(DeleteObjectRequest request) {
+      return delegate.deleteObject(request);
+    }
+
+    @Override
+    public String serviceName() {
+      return delegate.serviceName();
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static String baseUrl = "/api/attachment";
+
+  @Inject S3AsyncClient s3;
+
+  @Inject AttachmentRepository repository;
+
+  @Inject PendingUploadRepository pendingRepository;
+
+  private RequestSpecification given() {
+    return RestAssured.given().basePath(baseUrl);
+  }
+
+  @BeforeEach
+  public void init() {
+    repository.deleteAll().await().indefinitely();
+    pendingRepository.deleteAll().await().indefinitely();
+  }
+
+  /** Start an upload and send the logo to its presigned URL. */
+  private String upload(String filename) throws IOException {
+    var presigned =
+        given()
+            .headers("X-Client-Id", "test")
+            .contentType("application/json")
+            .body("{\"name\": \"%s\"}".formatted(filename))
+            .when()
+            .post("presigned")
+            .then()
+            .statusCode(201)
+            .body("id", notNullValue())
+            .body("method", is("PUT"))
+            .extract()
+            .jsonPath();
+
+    RestAssured.given()
+        .urlEncodingEnabled(false)
+        .body(getLogo())
+        .when()
+        .put(presigned.getString("url"))
+        .then()
+        .statusCode(200);
+
+    return presigned.getString("id");
+  }
+
+  private byte[] getLogo() throws IOException {
+    return this.getClass().getResourceAsStream("/quarkus_blogpost_formallogo.png").readAllBytes();
+  }
+
+  @Test
+  public void testConfirm() throws IOException {
+    var id = upload("logo.png");
+
+    var attachment =
+        given()
+            .headers("X-Client-Id", "test")
+            .when()
+            .post("presigned/" + id)
+            .then()
+            .statusCode(201)
+            .body("id", is(id))
+            .body("name", is("logo.png"))
+            .body("mimeType", is("image/png"))
+            .body("size", is(25018))
+            .extract()
+            .jsonPath();
+
+    given()
+        .headers("X-Client-Id", "test")
+        .when()
+        .get(attachment.getString("id") + "/content")
+        .then()
+        .statusCode(200)
+        .header("Content-Length", is("25018"));
+
+    // the pending upload is consumed by the first confirmation
+    given().headers("X-Client-Id", "test").when().post("presigned/" + id).then().statusCode(404);
+
+    assertEquals(1L, repository.count().await().indefinitely());
+  }
+
+  @Test
+  public void testConfirmOtherClient() throws IOException {
+    var id = upload("logo.png");
+
+    given().headers("X-Client-Id", "other").when().post("presigned/" + id).then().statusCode(404);
+  }
+
+  @Test
+  public void testConfirmAlreadyClaimed() throws IOException {
+    var id = upload("logo.png");
+
+    // a confirmation in progress
+    pendingRepository.claim(id, "test").await().indefinitely();
+
+    given().headers("X-Client-Id", "test").when().post("presigned/" + id).then().statusCode(409);
+
+    pendingRepository.release(id).await().indefinitely();
+
+    given().headers("X-Client-Id", "test").when().post("presigned/" + id).then().statusCode(201);
+  }
+
+  @Test
+  public void testConfirmBadMimeType() throws IOException {
+    var id = upload("logo.png");
+
+    given()
+        .headers("X-Client-Id", "test")
+        .headers("X-Allowed-MimeType", "image/jpeg")
+        .when()
+        .post("presigned/" + id)
+        .then()
+        .statusCode(400);
+
+    assertEquals(0L, repository.count().await().indefinitely());
+
+    // the content is dropped, the claim is released
+    given().headers("X-Client-Id", "test").when().post("presigned/" + id).then().statusCode(400);
+  }
+
+  @Test
+  public void testConfirmNotUploaded() {
+    JsonPath presigned =
+        given()
+            .headers("X-Client-Id", "test")
+            .contentType("application/json")
+            .body("{\"name\": \"logo.png\"}")
+            .when()
+            .post("presigned")
+            .then()
+            .statusCode(201)
+            .extract()
+            .jsonPath();
+
+    given()
+        .headers("X-Client-Id", "test")
+        .when()
+        .post("presigned/" + presigned.getString("id"))
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testConfirmReplacedContent() throws IOException {
+    var id = upload("logo.png");
+
+    QuarkusMock.installMockForType(
+        new RacingS3Client(
+            ClientProxy.unwrap(s3), "not an image".getBytes(StandardCharsets.US_ASCII)),
+        S3AsyncClient.class);
+
+    // the checked content is not the one which would be moved
+    given()
+        .headers("X-Client-Id", "test")
+        .headers("X-Allowed-MimeType", "image/png")
+        .when()
+        .post("presigned/" + id)
+        .then()
+        .statusCode(409);
+
+    assertEquals(0L, repository.count().await().indefinitely());
+
+    // the new content is checked
+    given()
+        .headers("X-Client-Id", "test")
+        .headers("X-Allowed-MimeType", "image/png")
+        .when()
+        .post("presigned/" + id)
+        .then()
+        .statusCode(400);
+
+    assertEquals(0L, repository.count().await().indefinitely());
+  }
+
+  @Test
+  public void testPendingExpiration() throws IOException {
+    upload("logo.png");
+
+    var rules =
+        s3.getBucketLifecycleConfiguration(
+                GetBucketLifecycleConfigurationRequest.builder().bucket("test").build())
+            .join()
+            .rules();
+
+    assertEquals(1, rules.size());
+    assertEquals(PendingUpload.PREFIX, rules.get(0).filter().prefix());
+    assertEquals(1, rules.get(0).expiration().days());
+  }
+}
@@ -1,6 +1,11 @@
 package fr.arcep.attachment;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.hasKey;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.RestAssured;
@@ -8,8 +13,11 @@ import io.restassured.specification.RequestSpecification;
 import jakarta.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
 
 @QuarkusTest
 public class AttachmentTest {
@@ -18,6 +26,8 @@ public class AttachmentTest {
 
   @Inject AttachmentRepository repository;
 
+  @Inject S3AsyncClient s3;
+
   private RequestSpecification given() {
     return RestAssured.given().basePath(baseUrl);
   }
@@ -45,17 +55,40 @@ public class AttachmentTest {
     var filePath = this.getClass().getResource("/" + filename).getPath();
     var file = new File(filePath);
 
+    String id =
+        given()
+            .headers("X-Client-Id", "test")
+            .multiPart("attachment", getMetadata(filename), "application/json")
+            .multiPart("file", file, "multipart/form-data")
+            .when()
+            .post()
+            .then()
+            .statusCode(201)
+            .body("name", is(filename))
+            .body("mimeType", is("image/png"))
+            .body("size", is(25018))
+            .body("$", not(hasKey("contentKey")))
+            .extract()
+            .path("id");
+
+    // the key of the content is internal
     given()
         .headers("X-Client-Id", "test")
-        .multiPart("attachment", getMetadata(filename), "application/json")
-        .multiPart("file", file, "multipart/form-data")
         .when()
-        .post()
+        .get(id)
         .then()
-        .statusCode(201)
+        .statusCode(200)
         .body("name", is(filename))
-        .body("mimeType", is("image/png"))
-        .body("size", is(25018));
+        .body("$", not(hasKey("contentKey")));
+
+    given()
+        .headers("X-Client-Id", "test")
+        .when()
+        .get()
+        .then()
+        .statusCode(206)
+        .body("[0].name", is(filename))
+        .body("[0]", not(hasKey("contentKey")));
   }
 
   @Test
@@ -109,4 +142,155 @@ public class AttachmentTest {
         .then()
         .statusCode(400);
   }
+
+  /**
+   * Write the logo followed by zeros, so the MIME type is still detected.
+   *
+   * @param size The size of the file, larger than the logo
+   * @return The file, deleted on exit
+   */
+  private File getLargeFile(int size) throws IOException {
+    var logo =
+        this.getClass().getResourceAsStream("/quarkus_blogpost_formallogo.png").readAllBytes();
+    var content = new byte[size];
+    System.arraycopy(logo, 0, content, 0, logo.length);
+
+    var file = File.createTempFile("attachment", ".png");
+    file.deleteOnExit();
+    Files.write(file.toPath(), content);
+
+    return file;
+  }
+
+  private void assertNoMultipartUpload() {
+    var uploads =
+        s3.listMultipartUploads(ListMultipartUploadsRequest.builder().bucket("test").build())
+            .join()
+            .uploads();
+
+    assertTrue(uploads.isEmpty(), "multipart uploads left: " + uploads);
+  }
+
+  @Test
+  public void testStreamingUpload() throws IOException {
+    var filename = "quarkus_blogpost_formallogo.png";
+    var filePath = this.getClass().getResource("/" + filename).getPath();
+    var file = new File(filePath);
+
+    String id =
+        given()
+            .headers("X-Client-Id", "test")
+            .multiPart("attachment", getMetadata(filename), "application/json")
+            .multiPart("file", file, "multipart/form-data")
+            .when()
+            .post("upload")
+            .then()
+            .statusCode(201)
+            .body("name", is(filename))
+            .body("mimeType", is("image/png"))
+            .body("size", is(25018))
+            .extract()
+            .path("id");
+
+    var content =
+        given()
+            .headers("X-Client-Id", "test")
+            .when()
+            .get(id + "/content")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+    assertArrayEquals(Files.readAllBytes(file.toPath()), content);
+  }
+
+  @Test
+  public void testStreamingUploadMultipart() throws IOException {
+    // larger than a part of tmf.upload.part-size
+    var file = getLargeFile(12 * 1024 * 1024 + 123);
+
+    String id =
+        given()
+            .headers("X-Client-Id", "test")
+            .multiPart("attachment", getMetadata("large.png"), "application/json")
+            .multiPart("file", file, "multipart/form-data")
+            .when()
+            .post("upload")
+            .then()
+            .statusCode(201)
+            .body("name", is("large.png"))
+            .body("mimeType", is("image/png"))
+            .body("size", is(12 * 1024 * 1024 + 123))
+            .extract()
+            .path("id");
+
+    var content =
+        given()
+            .headers("X-Client-Id", "test")
+            .when()
+            .get(id + "/content")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+    assertArrayEquals(Files.readAllBytes(file.toPath()), content);
+    assertNoMultipartUpload();
+  }
+
+  @Test
+  public void testStreamingUploadBadMimeType() throws IOException {
+    var file = getLargeFile(12 * 1024 * 1024);
+
+    given()
+        .headers("X-Client-Id", "test")
+        .headers("X-Allowed-MimeType", "image/jpeg")
+        .multiPart("attachment", getMetadata("large.png"), "application/json")
+        .multiPart("file", file, "multipart/form-data")
+        .when()
+        .post("upload")
+        .then()
+        .statusCode(400);
+
+    assertEquals(0L, repository.count().await().indefinitely());
+    assertNoMultipartUpload();
+  }
+
+  @Test
+  public void testStreamingUploadBadRequest() throws IOException {
+    var filename = "quarkus_blogpost_formallogo.png";
+    var filePath = this.getClass().getResource("/" + filename).getPath();
+    var file = new File(filePath);
+
+    // no file
+    given()
+        .headers("X-Client-Id", "test")
+        .multiPart("attachment", getMetadata(filename), "application/json")
+        .when()
+        .post("upload")
+        .then()
+        .statusCode(400);
+
+    // no name
+    given()
+        .headers("X-Client-Id", "test")
+        .multiPart("attachment", getMetadata(""), "application/json")
+        .multiPart("file", file, "multipart/form-data")
+        .when()
+        .post("upload")
+        .then()
+        .statusCode(400);
+
+    // no metadata
+    given()
+        .headers("X-Client-Id", "test")
+        .multiPart("file", file, "multipart/form-data")
+        .when()
+        .post("upload")
+        .then()
+        .statusCode(400);
+
+    assertEquals(0L, repository.count().await().indefinitely());
+  }
 }
@@ -0,0 +1,142 @@
+package fr.arcep.attachment;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+import io.restassured.specification.RequestSpecification;
+import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(AttachmentUploadLimitTest.LimitProfile.class)
+public class AttachmentUploadLimitTest {
+
+  public static class LimitProfile implements QuarkusTestProfile {
+    @Override
+    public Map<String, String> getConfigOverrides() {
+      return Map.of("tmf.attachment.upload.max-size", String.valueOf(LIMIT));
+    }
+  }
+
+  private static final int LIMIT = 1024 * 1024;
+
+  private static String baseUrl = "/api/attachment";
+
+  @Inject AttachmentRepository repository;
+
+  @TestHTTPResource("/api/attachment/upload")
+  URI uploadUri;
+
+  private RequestSpecification given() {
+    return RestAssured.given().basePath(baseUrl);
+  }
+
+  @BeforeEach
+  public void init() {
+    repository.deleteAll().await().indefinitely();
+  }
+
+  /** The logo followed by zeros. */
+  private byte[] getContent(int size) throws IOException {
+    var logo =
+        this.getClass().getResourceAsStream("/quarkus_blogpost_formallogo.png").readAllBytes();
+    var content = new byte[size];
+    System.arraycopy(logo, 0, content, 0, logo.length);
+
+    return content;
+  }
+
+  @Test
+  public void testUnderLimit() throws IOException {
+    var file = File.createTempFile("attachment", ".png");
+    file.deleteOnExit();
+    Files.write(file.toPath(), getContent(LIMIT / 2));
+
+    given()
+        .headers("X-Client-Id", "test")
+        .multiPart("attachment", "{\"name\": \"logo.png\"}", "application/json")
+        .multiPart("file", file, "multipart/form-data")
+        .when()
+        .post("upload")
+        .then()
+        .statusCode(201)
+        .body("size", is(LIMIT / 2));
+  }
+
+  @Test
+  public void testContentLength() throws IOException {
+    var file = File.createTempFile("attachment", ".png");
+    file.deleteOnExit();
+    Files.write(file.toPath(), getContent(LIMIT + 100 * 1024));
+
+    given()
+        .headers("X-Client-Id", "test")
+        .multiPart("attachment", "{\"name\": \"logo.png\"}", "application/json")
+        .multiPart("file", file, "multipart/form-data")
+        .when()
+        .post("upload")
+        .then()
+        .statusCode(413)
+        .body("code", is("413"));
+
+    assertEquals(0L, repository.count().await().indefinitely());
+  }
+
+  /** Without a Content-Length, the bytes of the file are counted. */
+  @Test
+  public void testChunked() throws IOException, InterruptedException {
+    var boundary = "limit-test-boundary";
+    var body = new ByteArrayOutputStream();
+    body.writeBytes(
+        ("--"
+                + boundary
+                + "\r\n"
+                + "Content-Disposition: form-data; name=\"attachment\"\r\n"
+                + "Content-Type: application/json\r\n\r\n"
+                + "{\"name\": \"logo.png\"}\r\n"
+                + "--"
+                + boundary
+                + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"logo.png\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII));
+    body.writeBytes(getContent(LIMIT + 100 * 1024));
+    body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+    var request =
+        HttpRequest.newBuilder(uploadUri)
+            .header("X-Client-Id", "test")
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            // an input stream of unknown length is sent chunked
+            .POST(
+                HttpRequest.BodyPublishers.ofInputStream(
+                    () -> new ByteArrayInputStream(body.toByteArray())))
+            .build();
+
+    var response =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build()
+            .send(request, HttpResponse.BodyHandlers.ofString());
+
+    assertEquals(413, response.statusCode());
+    assertEquals(0L, repository.count().await().indefinitely());
+  }
+}
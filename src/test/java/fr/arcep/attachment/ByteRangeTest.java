@@ -0,0 +1,97 @@
+package fr.arcep.attachment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class ByteRangeTest {
+
+  private static final long SIZE = 1000;
+
+  private static Optional<List<ByteRange>> parse(String header) {
+    return ByteRange.parse(header, SIZE);
+  }
+
+  @Test
+  public void testSingleRange() {
+    assertEquals(Optional.of(List.of(new ByteRange(0, 99))), parse("bytes=0-99"));
+    assertEquals(Optional.of(List.of(new ByteRange(900, 999))), parse("bytes=900-5000"));
+    assertEquals(Optional.of(List.of(new ByteRange(10, 10))), parse("BYTES=10-10"));
+  }
+
+  @Test
+  public void testSuffixRange() {
+    assertEquals(Optional.of(List.of(new ByteRange(500, 999))), parse("bytes=-500"));
+    assertEquals(Optional.of(List.of(new ByteRange(0, 999))), parse("bytes=-5000"));
+    assertEquals("bytes 500-999/1000", parse("bytes=-500").get().get(0).toContentRange(SIZE));
+  }
+
+  @Test
+  public void testOpenRange() {
+    assertEquals(Optional.of(List.of(new ByteRange(500, 999))), parse("bytes=500-"));
+    assertEquals("bytes=500-999", parse("bytes=500-").get().get(0).toRangeHeader());
+    assertEquals(500, parse("bytes=500-").get().get(0).length());
+  }
+
+  @Test
+  public void testUnsatisfiable() {
+    // answered with a 416
+    assertEquals(Optional.of(List.of()), parse("bytes=1000-"));
+    assertEquals(Optional.of(List.of()), parse("bytes=2000-3000"));
+    assertEquals(Optional.of(List.of()), parse("bytes=-0"));
+    assertEquals(Optional.of(List.of()), parse("bytes=1000-1100, 2000-"));
+
+    // the satisfiable ranges are kept
+    assertEquals(Optional.of(List.of(new ByteRange(0, 9))), parse("bytes=0-9, 2000-"));
+  }
+
+  @Test
+  public void testMalformed() {
+    assertEquals(Optional.empty(), parse(null));
+    assertEquals(Optional.empty(), parse("items=0-99"));
+    assertEquals(Optional.empty(), parse("bytes=abc"));
+    assertEquals(Optional.empty(), parse("bytes=a-b"));
+    assertEquals(Optional.empty(), parse("bytes=99-0"));
+    assertEquals(Optional.empty(), parse("bytes=--5"));
+    assertEquals(Optional.empty(), parse("bytes=0-99, x"));
+    assertEquals(Optional.empty(), parse("bytes=-"));
+  }
+
+  @Test
+  public void testTooManyRanges() {
+    var header = new StringBuilder("bytes=0-0");
+    for (var i = 1; i < ByteRange.MAX_RANGES; i++) {
+      header.append(", ").append(i * 10).append("-").append(i * 10);
+    }
+
+    assertEquals(ByteRange.MAX_RANGES, parse(header.toString()).get().size());
+    assertEquals(Optional.empty(), parse(header + ", 900-900"));
+  }
+
+  @Test
+  public void testMultipleRanges() {
+    assertEquals(
+        Optional.of(List.of(new ByteRange(0, 9), new ByteRange(100, 109), new ByteRange(990, 999))),
+        parse("bytes=100-109, -10, 0-9"));
+  }
+
+  @Test
+  public void testMergeOverlapping() {
+    assertEquals(Optional.of(List.of(new ByteRange(0, 149))), parse("bytes=0-99, 50-149"));
+    assertEquals(Optional.of(List.of(new ByteRange(0, 99))), parse("bytes=0-99, 10-20"));
+    assertEquals(Optional.of(List.of(new ByteRange(0, 999))), parse("bytes=0-, -500"));
+    assertEquals(
+        Optional.of(List.of(new ByteRange(0, 99), new ByteRange(200, 399))),
+        parse("bytes=300-399, 0-99, 200-349"));
+  }
+
+  @Test
+  public void testMergeAdjacent() {
+    assertEquals(Optional.of(List.of(new ByteRange(0, 199))), parse("bytes=0-99, 100-199"));
+    assertEquals(
+        Optional.of(List.of(new ByteRange(0, 99), new ByteRange(101, 199))),
+        parse("bytes=0-99, 101-199"));
+  }
+}
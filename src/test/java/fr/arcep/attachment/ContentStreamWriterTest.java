@@ -0,0 +1,150 @@
+package fr.arcep.attachment;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+public class ContentStreamWriterTest {
+
+  private final ContentStreamWriter writer = new ContentStreamWriter();
+
+  private byte[] write(ContentStream stream) throws IOException {
+    var output = new ByteArrayOutputStream();
+    writer.writeTo(stream, ContentStream.class, ContentStream.class, null, null, null, output);
+
+    return output.toByteArray();
+  }
+
+  /** Emit the chunks on another thread, as the S3 client does. */
+  private static Publisher<ByteBuffer> chunks(int count, int size) {
+    return subscriber ->
+        subscriber.onSubscribe(
+            new Subscription() {
+              private int sent;
+              private boolean cancelled;
+
+              @Override
+              public synchronized void request(long n) {
+                for (var i = 0; i < n && sent < count && !cancelled; i++) {
+                  var chunk = new byte[size];
+                  Arrays.fill(chunk, (byte) sent++);
+                  CompletableFuture.runAsync(() -> subscriber.onNext(ByteBuffer.wrap(chunk)))
+                      .join();
+                }
+
+                if (sent == count && !cancelled) {
+                  cancelled = true;
+                  subscriber.onComplete();
+                }
+              }
+
+              @Override
+              public synchronized void cancel() {
+                cancelled = true;
+              }
+            });
+  }
+
+  @Test
+  public void testSegments() throws IOException {
+    var stream =
+        new ContentStream(
+            List.of(
+                ContentStream.Segment.of("head|".getBytes(StandardCharsets.UTF_8)),
+                ContentStream.Segment.of(chunks(10, 10000)),
+                ContentStream.Segment.of("|tail".getBytes(StandardCharsets.UTF_8))),
+            -1);
+
+    var content = write(stream);
+
+    var expected = new ByteArrayOutputStream();
+    expected.writeBytes("head|".getBytes(StandardCharsets.UTF_8));
+    for (var i = 0; i < 10; i++) {
+      var chunk = new byte[10000];
+      Arrays.fill(chunk, (byte) i);
+      expected.writeBytes(chunk);
+    }
+    expected.writeBytes("|tail".getBytes(StandardCharsets.UTF_8));
+
+    assertArrayEquals(expected.toByteArray(), content);
+  }
+
+  @Test
+  public void testError() {
+    Publisher<ByteBuffer> failing =
+        subscriber ->
+            subscriber.onSubscribe(
+                new Subscription() {
+                  @Override
+                  public void request(long n) {
+                    subscriber.onError(new IllegalStateException("read failed"));
+                  }
+
+                  @Override
+                  public void cancel() {}
+                });
+
+    assertThrows(IOException.class, () -> write(new ContentStream(failing, -1)));
+  }
+
+  @Test
+  public void testOpenError() {
+    ContentStream.Segment segment =
+        () -> CompletableFuture.failedFuture(new IllegalStateException("not found"));
+
+    assertThrows(IOException.class, () -> write(new ContentStream(List.of(segment), -1)));
+  }
+
+  @Test
+  public void testCancelOnWriteError() {
+    var cancelled = new AtomicBoolean();
+    Publisher<ByteBuffer> content =
+        subscriber ->
+            subscriber.onSubscribe(
+                new Subscription() {
+                  @Override
+                  public void request(long n) {
+                    subscriber.onNext(ByteBuffer.wrap(new byte[] {1}));
+                  }
+
+                  @Override
+                  public void cancel() {
+                    cancelled.set(true);
+                  }
+                });
+
+    var output =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            throw new IOException("connection reset");
+          }
+        };
+
+    assertThrows(
+        IOException.class,
+        () ->
+            writer.writeTo(
+                new ContentStream(content, -1),
+                ContentStream.class,
+                ContentStream.class,
+                null,
+                null,
+                null,
+                output));
+    assertTrue(cancelled.get());
+  }
+}
@@ -0,0 +1,149 @@
+package fr.arcep.tmf.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class EntityBaseTest {
+
+  public static class TestEntity extends EntityBase {
+
+    @JsonProperty public String name = "default";
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public String status = "created";
+
+    @JsonProperty("label")
+    public String title;
+
+    @JsonIgnore public String secret;
+
+    @JsonProperty public int count;
+    @JsonProperty public long size;
+    @JsonProperty public Double ratio;
+    @JsonProperty public Date dueDate;
+  }
+
+  @BeforeAll
+  public static void init() {
+    new EntitySupport(new ObjectMapper(), null, new SimpleMeterRegistry());
+  }
+
+  private static TestEntity fromMap(Map<String, Object> input, String... ignored) {
+    return EntityBase.fromMap(new HashMap<>(input), TestEntity.class, List.of(ignored));
+  }
+
+  @Test
+  public void testDeclaredFields() {
+    var entity = fromMap(Map.of("name", "ticket", "count", 3, "size", 4L, "ratio", 0.5));
+
+    assertEquals("ticket", entity.name);
+    assertEquals(3, entity.count);
+    assertEquals(4L, entity.size);
+    assertEquals(0.5, entity.ratio);
+    assertTrue(entity.payload.isEmpty());
+  }
+
+  @Test
+  public void testReadOnly() {
+    var entity = fromMap(Map.of("status", "closed"));
+
+    assertEquals("created", entity.status);
+    assertFalse(entity.payload.containsKey("status"));
+  }
+
+  @Test
+  public void testRenamed() {
+    var entity = fromMap(Map.of("title", "by field name", "label", "by json name"));
+
+    assertNull(entity.title);
+    assertFalse(entity.payload.containsKey("title"));
+    assertEquals("by json name", entity.payload.get("label"));
+  }
+
+  @Test
+  public void testJsonIgnore() {
+    var entity = fromMap(Map.of("secret", "value"));
+
+    assertNull(entity.secret);
+    assertFalse(entity.payload.containsKey("secret"));
+  }
+
+  @Test
+  public void testIgnoredFields() {
+    var entity = fromMap(Map.of("name", "ticket", "extra", "value"), "name", "extra");
+
+    assertEquals("default", entity.name);
+    assertTrue(entity.payload.isEmpty());
+  }
+
+  @Test
+  public void testUnknownProperties() {
+    var input = new HashMap<String, Object>();
+    input.put("extra", "value");
+    input.put("nested", Map.of("a", 1));
+    input.put("empty", null);
+
+    var entity = fromMap(input);
+
+    assertEquals("value", entity.payload.get("extra"));
+    assertEquals(Map.of("a", 1), entity.payload.get("nested"));
+    assertTrue(entity.payload.containsKey("empty"));
+    assertNull(entity.payload.get("empty"));
+  }
+
+  @Test
+  public void testParentFields() {
+    var entity = fromMap(Map.of("domain", "other", "id", "forced"));
+
+    assertNull(entity.domain);
+    assertNotEquals("forced", entity.id);
+    assertEquals("other", entity.payload.get("domain"));
+    assertEquals("forced", entity.payload.get("id"));
+  }
+
+  @Test
+  public void testNumericCoercion() {
+    var entity = fromMap(Map.of("count", "12", "size", 5, "ratio", 2));
+
+    assertEquals(12, entity.count);
+    assertEquals(5L, entity.size);
+    assertEquals(2.0, entity.ratio);
+  }
+
+  @Test
+  public void testDateCoercion() {
+    assertEquals(
+        new Date(1684319400000L), fromMap(Map.of("dueDate", "2023-05-17T10:30:00.000Z")).dueDate);
+    assertEquals(new Date(1684319400000L), fromMap(Map.of("dueDate", 1684319400000L)).dueDate);
+
+    var date = new Date();
+    assertEquals(date, fromMap(Map.of("dueDate", date)).dueDate);
+  }
+
+  @Test
+  public void testNull() {
+    var input = new HashMap<String, Object>();
+    input.put("name", null);
+    input.put("ratio", null);
+
+    var entity = fromMap(input);
+
+    assertEquals("default", entity.name);
+    assertNull(entity.ratio);
+    assertTrue(entity.payload.isEmpty());
+  }
+}
@@ -0,0 +1,110 @@
+package fr.arcep.tmf.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.MongoClientSettings;
+import fr.arcep.tmf.model.StatusChange;
+import fr.arcep.troubleticket.TroubleTicketEntity;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.pojo.Conventions;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the serialization of a trouble ticket read from Mongo through {@link
+ * EntityBase#toMap(ObjectMapper)} with the direct {@link RawEntity} path.
+ *
+ * <p>Both paths start from the raw document returned by the driver: the legacy one decodes it into
+ * the entity before converting it to a map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntitySerializationBenchmark {
+
+  @Param({"10", "1000"})
+  int statusChanges;
+
+  ObjectMapper mapper;
+  Codec<TroubleTicketEntity> codec;
+  EntityDescriptor descriptor;
+  BsonDocument document;
+
+  @Setup
+  public void setup() {
+    mapper =
+        new ObjectMapper()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    var registry =
+        CodecRegistries.fromRegistries(
+            MongoClientSettings.getDefaultCodecRegistry(),
+            CodecRegistries.fromProviders(
+                PojoCodecProvider.builder()
+                    .automatic(true)
+                    .conventions(Conventions.DEFAULT_CONVENTIONS)
+                    .build()));
+    codec = registry.get(TroubleTicketEntity.class);
+    descriptor = EntityDescriptor.of(TroubleTicketEntity.class);
+
+    var entity = new TroubleTicketEntity();
+    entity.domain = "benchmark";
+    entity.name = "benchmark trouble ticket";
+    entity.description = "A trouble ticket with a long status history";
+    entity.status = "IN_PROGRESS";
+    entity.payload.append("@type", "malfacon").append("reference", "REF-0001");
+    for (var i = 0; i < statusChanges; i++) {
+      entity.statusChange.add(
+          new StatusChange("STATUS_" + i, new Date(), "Change number " + i, "author"));
+    }
+
+    document = new BsonDocument();
+    codec.encode(new BsonDocumentWriter(document), entity, EncoderContext.builder().build());
+  }
+
+  @Benchmark
+  public byte[] toMap() throws Exception {
+    var entity = codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    return mapper.writeValueAsBytes(entity.toMap(mapper));
+  }
+
+  @Benchmark
+  public byte[] raw() throws Exception {
+    return mapper.writeValueAsBytes(new RawEntity(document, descriptor, Set.of()));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(EntitySerializationBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
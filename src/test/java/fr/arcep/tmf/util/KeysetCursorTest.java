@@ -0,0 +1,98 @@
+package fr.arcep.tmf.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import jakarta.ws.rs.BadRequestException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+public class KeysetCursorTest {
+
+  private static final BsonDocument SORT = KeysetCursor.keysetSort(new Document("name", -1));
+
+  @Test
+  public void testKeysetSort() {
+    assertEquals(BsonDocument.parse("{'name': -1, '_id': 1}"), SORT);
+    assertEquals(
+        BsonDocument.parse("{'_id': -1}"), KeysetCursor.keysetSort(new Document("_id", -1)));
+  }
+
+  @Test
+  public void testRoundTrip() {
+    var document = BsonDocument.parse("{'_id': 'b', 'name': 'ticket', 'other': 1}");
+    var token = KeysetCursor.after(SORT, document).encode();
+
+    var predicate = KeysetCursor.decode(token, SORT).predicate();
+
+    assertEquals(
+        new Document(
+            "$or",
+            List.of(
+                new Document(
+                    "$or",
+                    List.of(
+                        new Document("name", new Document("$lt", document.get("name"))),
+                        new Document("name", BsonNull.VALUE))),
+                new Document("name", document.get("name"))
+                    .append("_id", new Document("$gt", document.get("_id"))))),
+        predicate);
+  }
+
+  @Test
+  public void testScalarValues() {
+    for (var value :
+        new String[] {
+          "'text'",
+          "1",
+          "{'$numberLong': '1'}",
+          "1.5",
+          "{'$date': 0}",
+          "true",
+          "null",
+          "{'$oid': '6464c7b1a1c2d3e4f5a6b7c8'}"
+        }) {
+      KeysetCursor.decode(token("[" + value + ", 'id']"), SORT);
+    }
+  }
+
+  @Test
+  public void testInvalid() {
+    assertThrows(BadRequestException.class, () -> KeysetCursor.decode("not base64 !", SORT));
+    assertThrows(BadRequestException.class, () -> KeysetCursor.decode(encode("not json"), SORT));
+    assertThrows(BadRequestException.class, () -> KeysetCursor.decode(token("['a']"), SORT));
+    assertThrows(
+        BadRequestException.class,
+        () -> KeysetCursor.decode(encode("{'s': {'name': 1, '_id': 1}, 'v': ['a', 'id']}"), SORT));
+  }
+
+  @Test
+  public void testRejectOperators() {
+    assertThrows(
+        BadRequestException.class, () -> KeysetCursor.decode(token("[{'$ne': null}, 'id']"), SORT));
+    assertThrows(
+        BadRequestException.class, () -> KeysetCursor.decode(token("[['a', 'b'], 'id']"), SORT));
+    assertThrows(
+        BadRequestException.class, () -> KeysetCursor.decode(token("['a', {'$gt': ''}]"), SORT));
+    assertThrows(BadRequestException.class, () -> KeysetCursor.decode(token("['a', 1]"), SORT));
+    assertThrows(BadRequestException.class, () -> KeysetCursor.decode(token("['a', null]"), SORT));
+    assertThrows(
+        BadRequestException.class,
+        () -> KeysetCursor.decode(token("[{'$regex': '.*'}, 'id']"), SORT));
+  }
+
+  private static String token(String values) {
+    return encode("{'s': " + SORT.toJson() + ", 'v': " + values + "}");
+  }
+
+  private static String encode(String json) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,74 @@
+package fr.arcep.tmf.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.arcep.tmf.util.TmfApiBase.UnauthorizedException;
+import fr.arcep.troubleticket.TroubleTicketLocalService;
+import fr.arcep.troubleticket.TroubleTicketRepository;
+import io.quarkus.arc.ClientProxy;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(LocalServiceBaseTest.ConfigProfile.class)
+public class LocalServiceBaseTest {
+
+  public static class ConfigProfile implements QuarkusTestProfile {
+    @Override
+    public Map<String, String> getConfigOverrides() {
+      return Map.of("tmf.bulk.batch-size", "7", "tmf.pagination.facet", "true");
+    }
+  }
+
+  @Inject TroubleTicketLocalService troubleTickets;
+
+  @Inject TroubleTicketRepository repository;
+
+  @BeforeEach
+  public void init() {
+    repository.deleteAll().await().indefinitely();
+  }
+
+  @Test
+  public void testResource() {
+    var service = ClientProxy.unwrap(troubleTickets);
+    var call = LocalCall.of("test", "GET", null);
+
+    TmfApiBase<?, ?> resource = service.resource(call);
+    assertSame(call, resource.localCall);
+    assertEquals("test", resource.clientId);
+    assertNotNull(resource.tmFilter);
+    assertNotNull(resource.repository);
+    assertEquals(7, resource.bulkBatchSize);
+    assertTrue(resource.facetPagination);
+
+    assertNotSame(resource, service.resource(call));
+  }
+
+  @Test
+  public void testUnauthorized() {
+    var service = ClientProxy.unwrap(troubleTickets);
+
+    assertThrows(
+        UnauthorizedException.class, () -> service.resource(LocalCall.of("", "GET", null)));
+  }
+
+  @Test
+  public void testList() {
+    var response = troubleTickets.list("test", new MultivaluedHashMap<>()).await().indefinitely();
+
+    assertEquals(206, response.getStatus());
+    assertEquals("0", response.getHeaderString("X-Total-Count"));
+  }
+}
@@ -0,0 +1,142 @@
+package fr.arcep.tmf.util;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Indexes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the two ways {@link TmfApiBase} fetches a sorted page with its exact total: a {@code
+ * $facet} aggregation, and a find beside a {@code countDocuments}.
+ *
+ * <p>It needs a MongoDB server, {@code mongodb://localhost:27017} unless the {@code mongo.uri}
+ * system property is set. The documents are written to a {@code pagination-benchmark} database,
+ * dropped at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginationBenchmark {
+
+  private static final String DATABASE = "pagination-benchmark";
+
+  private static final Document FILTER = new Document("domain", "test");
+
+  private static final Document SORT = new Document("creationDate", -1);
+
+  private static final int LIMIT = 10;
+
+  @Param({"10000", "100000"})
+  int size;
+
+  @Param({"0", "1000"})
+  int offset;
+
+  MongoClient client;
+
+  MongoCollection<Document> collection;
+
+  ExecutorService executor;
+
+  @Setup
+  public void setup() {
+    client = MongoClients.create(System.getProperty("mongo.uri", "mongodb://localhost:27017"));
+    collection = client.getDatabase(DATABASE).getCollection("troubleTicket");
+    collection.drop();
+    collection.createIndex(Indexes.compoundIndex(Indexes.ascending("domain"), SORT));
+
+    var now = System.currentTimeMillis();
+    var batch = new ArrayList<Document>(1000);
+    for (var i = 0; i < size; i++) {
+      batch.add(
+          new Document("_id", UUID.randomUUID().toString())
+              .append("domain", i % 10 == 0 ? "other" : "test")
+              .append("creationDate", new Date(now - i * 1000L))
+              .append("name", "trouble ticket " + i)
+              .append("description", "x".repeat(200)));
+      if (batch.size() == 1000) {
+        collection.insertMany(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      collection.insertMany(batch);
+    }
+
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+    client.getDatabase(DATABASE).drop();
+    client.close();
+  }
+
+  @Benchmark
+  public void facet(Blackhole blackhole) {
+    var pipeline =
+        List.of(
+            new Document("$match", FILTER),
+            new Document("$sort", SORT),
+            new Document(
+                "$facet",
+                new Document(
+                        "data",
+                        List.of(new Document("$skip", offset), new Document("$limit", LIMIT)))
+                    .append("total", List.of(new Document("$count", "count")))));
+
+    blackhole.consume(collection.aggregate(pipeline).allowDiskUse(true).first());
+  }
+
+  @Benchmark
+  public void countAndFind(Blackhole blackhole) {
+    var total = CompletableFuture.supplyAsync(() -> collection.countDocuments(FILTER), executor);
+    var data =
+        CompletableFuture.supplyAsync(
+            () ->
+                collection
+                    .find(FILTER)
+                    .sort(SORT)
+                    .skip(offset)
+                    .limit(LIMIT)
+                    .into(new ArrayList<>()),
+            executor);
+
+    blackhole.consume(total.join());
+    blackhole.consume(data.join());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PaginationBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
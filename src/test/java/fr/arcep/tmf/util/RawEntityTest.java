@@ -0,0 +1,91 @@
+package fr.arcep.tmf.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.arcep.attachment.AttachmentEntity;
+import fr.arcep.note.NoteEntity;
+import fr.arcep.troubleticket.TroubleTicketEntity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+public class RawEntityTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private JsonNode write(String document, Set<String> fields) {
+    return write(document, TroubleTicketEntity.class, fields);
+  }
+
+  private JsonNode write(String document, Class<?> type, Set<String> fields) {
+    var entity = new RawEntity(BsonDocument.parse(document), EntityDescriptor.of(type), fields);
+
+    return objectMapper.valueToTree(entity);
+  }
+
+  @Test
+  public void testRename() {
+    var json = write("{'_id': 'a', 'name': 'ticket', 'domain': 'test', 'extra': 1}", Set.of());
+
+    assertEquals("a", json.get("id").asText());
+    assertEquals("ticket", json.get("name").asText());
+    assertEquals(1, json.get("extra").asInt());
+    assertFalse(json.has("_id"));
+    assertFalse(json.has("domain"));
+  }
+
+  @Test
+  public void testFields() {
+    var json = write("{'_id': 'a', 'name': 'ticket'}", Set.of("name"));
+
+    var names = new ArrayList<String>();
+    json.fieldNames().forEachRemaining(names::add);
+
+    assertEquals(List.of("name"), names);
+  }
+
+  @Test
+  public void testDefaultsPerEntity() throws InterruptedException {
+    var first = write("{'name': 'first'}", Set.of());
+    Thread.sleep(5);
+    var second = write("{'name': 'second'}", Set.of());
+
+    assertNotNull(first.get("id").textValue());
+    assertNotEquals(first.get("id"), second.get("id"));
+    assertNotEquals(first.get("creationDate"), second.get("creationDate"));
+  }
+
+  @Test
+  public void testIgnored() {
+    var json =
+        write(
+            "{'_id': 'a', 'name': 'logo.png', 'contentKey': 'blob'}",
+            AttachmentEntity.class,
+            Set.of());
+
+    assertEquals("logo.png", json.get("name").asText());
+    assertFalse(json.has("contentKey"));
+  }
+
+  @Test
+  public void testHiddenByChild() {
+    var json =
+        write(
+            "{'_id': 'a', 'text': 'a note', 'creationDate': {'$date': 0}, 'lastUpdate': {'$date':"
+                + " 0}}",
+            NoteEntity.class,
+            Set.of());
+
+    assertTrue(json.has("date"));
+    assertFalse(json.has("creationDate"));
+    assertFalse(json.has("lastUpdate"));
+  }
+}
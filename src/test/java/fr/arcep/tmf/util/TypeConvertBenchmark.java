@@ -0,0 +1,110 @@
+package fr.arcep.tmf.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the regex based type inference with {@link TypeConverter} on the values of an {@code in}
+ * filter, as split by the {@code In} operator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConvertBenchmark {
+
+  private static final Pattern SEPARATOR = Pattern.compile("\\s*,\\s*");
+
+  @Param({"100", "500"})
+  int size;
+
+  @Param({"ids", "numbers", "dates", "mixed"})
+  String kind;
+
+  String query;
+
+  @Setup
+  public void setup() {
+    query =
+        IntStream.range(0, size).mapToObj(this::value).reduce((a, b) -> a + ", " + b).orElseThrow();
+  }
+
+  private String value(int i) {
+    return switch (kind) {
+      case "ids" -> "TT-" + (100000 + i);
+      case "numbers" -> i % 2 == 0 ? Integer.toString(i * 37) : (i * 1.5) + "";
+      case "dates" -> LocalDate.of(2023, 1, 1).plusDays(i).toString();
+      default -> switch (i % 4) {
+        case 0 -> "TT-" + i;
+        case 1 -> Integer.toString(i);
+        case 2 -> LocalDate.of(2023, 1, 1).plusDays(i).toString();
+        default -> i % 8 == 3 ? "true" : "false";
+      };
+    };
+  }
+
+  @Benchmark
+  public void legacy(Blackhole blackhole) {
+    SEPARATOR
+        .splitAsStream(query)
+        .map(TypeConvertBenchmark::legacyConvert)
+        .forEach(blackhole::consume);
+  }
+
+  @Benchmark
+  public void scanner(Blackhole blackhole) {
+    SEPARATOR.splitAsStream(query).map(TypeConverter::convert).forEach(blackhole::consume);
+  }
+
+  /** The regex based implementation previously used by {@code TMFilter.typeConvert}. */
+  static Object legacyConvert(String value) {
+    try {
+      if (value.matches("^-?\\d+$")) {
+        return Double.parseDouble(value);
+      } else if (value.matches("^-?\\d+\\.\\d+$")) {
+        return Double.parseDouble(value);
+      } else if (value.matches("^-?\\d+\\.\\d+e-?\\d+$")) {
+        return Double.parseDouble(value);
+      } else if (value.matches("^\\d{4}-\\d{2}-\\d{2}$")) {
+        return Date.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant());
+      } else if (value.matches("^\\d{4}-\\d{2}-\\d{2}")) {
+        return Date.from(LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant());
+      } else if ("TRUE".equalsIgnoreCase(value)) {
+        return true;
+      } else if ("FALSE".equalsIgnoreCase(value)) {
+        return false;
+      }
+    } catch (Exception e) {
+      // ignored
+    }
+
+    return value;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(TypeConvertBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
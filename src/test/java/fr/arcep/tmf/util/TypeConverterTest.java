@@ -0,0 +1,129 @@
+package fr.arcep.tmf.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+
+public class TypeConverterTest {
+
+  @Test
+  public void testIntegers() {
+    assertEquals(0, TypeConverter.convert("0"));
+    assertEquals(42, TypeConverter.convert("42"));
+    assertEquals(-42, TypeConverter.convert("-42"));
+    assertEquals(Integer.MAX_VALUE, TypeConverter.convert("2147483647"));
+    assertEquals(2147483648L, TypeConverter.convert("2147483648"));
+    assertEquals(-2147483649L, TypeConverter.convert("-2147483649"));
+    assertEquals(999999999999999999L, TypeConverter.convert("999999999999999999"));
+    assertEquals(1.0e19, TypeConverter.convert("10000000000000000000"));
+    assertEquals(-1.0e19, TypeConverter.convert("-10000000000000000000"));
+  }
+
+  @Test
+  public void testDecimals() {
+    assertEquals(1.5, TypeConverter.convert("1.5"));
+    assertEquals(-0.25, TypeConverter.convert("-0.25"));
+    assertEquals(1.5e3, TypeConverter.convert("1.5e3"));
+    assertEquals(1.5e-3, TypeConverter.convert("1.5E-3"));
+    assertEquals(1.5e3, TypeConverter.convert("1.5e+3"));
+
+    assertEquals("1.", TypeConverter.convert("1."));
+    assertEquals(".5", TypeConverter.convert(".5"));
+    assertEquals("1.5e", TypeConverter.convert("1.5e"));
+    assertEquals("1.5e-", TypeConverter.convert("1.5e-"));
+    assertEquals("1e5", TypeConverter.convert("1e5"));
+  }
+
+  @Test
+  public void testSigns() {
+    assertEquals("+1", TypeConverter.convert("+1"));
+    assertEquals("-", TypeConverter.convert("-"));
+    assertEquals("--1", TypeConverter.convert("--1"));
+    assertEquals("1-", TypeConverter.convert("1-"));
+  }
+
+  @Test
+  public void testStrings() {
+    assertEquals("", TypeConverter.convert(""));
+    assertEquals("abc", TypeConverter.convert("abc"));
+    assertEquals("123abc", TypeConverter.convert("123abc"));
+    assertEquals("12 34", TypeConverter.convert("12 34"));
+    assertEquals("0x1F", TypeConverter.convert("0x1F"));
+    assertEquals("-1a", TypeConverter.convert("-1a"));
+  }
+
+  @Test
+  public void testDates() {
+    assertEquals(local(2023, 5, 17, 0, 0, 0, 0), TypeConverter.convert("2023-05-17"));
+    assertEquals(local(2024, 2, 29, 0, 0, 0, 0), TypeConverter.convert("2024-02-29"));
+    assertEquals(local(2023, 5, 17, 10, 30, 0, 0), TypeConverter.convert("2023-05-17T10:30"));
+    assertEquals(local(2023, 5, 17, 10, 30, 15, 0), TypeConverter.convert("2023-05-17T10:30:15"));
+    assertEquals(
+        local(2023, 5, 17, 10, 30, 15, 123_000_000),
+        TypeConverter.convert("2023-05-17T10:30:15.123"));
+  }
+
+  @Test
+  public void testDatetimesWithOffset() {
+    assertEquals(offset("2023-05-17T10:30:15Z"), TypeConverter.convert("2023-05-17T10:30:15Z"));
+    assertEquals(offset("2023-05-17T10:30:00Z"), TypeConverter.convert("2023-05-17T10:30Z"));
+    assertEquals(offset("2023-05-17T10:30:15.5Z"), TypeConverter.convert("2023-05-17T10:30:15.5Z"));
+    assertEquals(
+        offset("2023-05-17T10:30:15+02:00"), TypeConverter.convert("2023-05-17T10:30:15+02:00"));
+    assertEquals(
+        offset("2023-05-17T10:30:15-05:30"), TypeConverter.convert("2023-05-17T10:30:15-05:30"));
+  }
+
+  @Test
+  public void testInvalidDates() {
+    for (var value :
+        new String[] {
+          "2023-13-01",
+          "2023-00-10",
+          "2023-02-29",
+          "2023-04-31",
+          "2023-05-00",
+          "2023-5-17",
+          "2023/05/17",
+          "2023-05-17T24:00",
+          "2023-05-17T10:60",
+          "2023-05-17T10:30:60",
+          "2023-05-17 10:30",
+          "2023-05-17T10:30:15.",
+          "2023-05-17T10:30:15.1234567890",
+          "2023-05-17T10:30:15+2:00",
+          "2023-05-17T10:30:15+02:60",
+          "2023-05-17T10:30:15+19:00",
+          "2023-05-17T10:30:15ZZ",
+          "2023-05-17T10:30:15X"
+        }) {
+      assertEquals(value, TypeConverter.convert(value), value);
+    }
+  }
+
+  @Test
+  public void testBooleans() {
+    assertEquals(Boolean.TRUE, TypeConverter.convert("true"));
+    assertEquals(Boolean.TRUE, TypeConverter.convert("TRUE"));
+    assertEquals(Boolean.FALSE, TypeConverter.convert("false"));
+    assertEquals(Boolean.FALSE, TypeConverter.convert("False"));
+    assertEquals("truth", TypeConverter.convert("truth"));
+    assertEquals("yes", TypeConverter.convert("yes"));
+  }
+
+  private static Date local(
+      int year, int month, int day, int hour, int minute, int second, int nano) {
+    return Date.from(
+        LocalDateTime.of(year, month, day, hour, minute, second, nano)
+            .atZone(ZoneId.systemDefault())
+            .toInstant());
+  }
+
+  private static Date offset(String value) {
+    return Date.from(OffsetDateTime.parse(value).toInstant());
+  }
+}
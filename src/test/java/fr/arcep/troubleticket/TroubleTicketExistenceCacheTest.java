@@ -0,0 +1,140 @@
+package fr.arcep.troubleticket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TroubleTicketExistenceCacheTest {
+
+  /** Counts the calls, the known tickets being counted once. */
+  private static class FakeApi implements TroubleTicketApi {
+
+    private final List<String> calls = new ArrayList<>();
+
+    private Set<String> known = Set.of();
+
+    @Override
+    public Uni<Response> count(String clientId, MultivaluedMap<String, String> query) {
+      var id = query.getFirst("_id");
+      calls.add(id);
+
+      return Uni.createFrom()
+          .item(Response.noContent().header("X-Total-Count", known.contains(id) ? 1 : 0).build());
+    }
+
+    @Override
+    public Uni<Response> list(String clientId, MultivaluedMap<String, String> query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Multi<Object> stream(String clientId, MultivaluedMap<String, String> query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Multi<String> streamRaw(String clientId, MultivaluedMap<String, String> query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Uni<Response> get(String clientId, UUID id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Uni<Response> create(String clientId, Object troubleTicket) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Uni<Response> upsert(String clientId, String externalId, Object troubleTicket) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Uni<Response> delete(String clientId, UUID id) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final UUID first = UUID.randomUUID();
+  private final UUID second = UUID.randomUUID();
+  private final UUID third = UUID.randomUUID();
+
+  private FakeApi api;
+
+  private TroubleTicketExistenceCache cache;
+
+  @BeforeEach
+  public void init() {
+    api = new FakeApi();
+    api.known = Set.of(first.toString(), second.toString(), third.toString());
+
+    cache = new TroubleTicketExistenceCache();
+    cache.troubleTicketService = api;
+    cache.ttl = Duration.ofMinutes(1);
+    cache.maxSize = 2;
+    cache.init();
+  }
+
+  private void check(UUID id) {
+    cache.check("test", id).await().indefinitely();
+  }
+
+  @Test
+  public void testCached() {
+    check(first);
+    check(first);
+
+    assertEquals(List.of(first.toString()), api.calls);
+  }
+
+  @Test
+  public void testNotFound() {
+    var unknown = UUID.randomUUID();
+
+    var e = assertThrows(WebApplicationException.class, () -> check(unknown));
+    assertEquals(404, e.getResponse().getStatus());
+
+    // the failures are not kept
+    assertThrows(WebApplicationException.class, () -> check(unknown));
+    assertEquals(2, api.calls.size());
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    check(first);
+    check(second);
+    check(first);
+
+    // evicts the second ticket only
+    check(third);
+    check(first);
+    assertEquals(3, api.calls.size());
+
+    check(second);
+    assertEquals(4, api.calls.size());
+  }
+
+  @Test
+  public void testInvalidate() {
+    check(first);
+    cache.invalidate(first.toString());
+    check(first);
+
+    assertEquals(2, api.calls.size());
+  }
+}
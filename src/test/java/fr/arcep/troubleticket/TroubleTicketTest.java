@@ -1,7 +1,11 @@
 package fr.arcep.troubleticket;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.RestAssured;
@@ -164,6 +168,187 @@ public class TroubleTicketTest {
         .body(is("[{\"name\":\"other trouble ticket\"},{\"name\":\"test trouble ticket\"}]"));
   }
 
+  @Test
+  public void testFilterWithSameShape() {
+    for (var name : new String[] {"first trouble ticket", "second trouble ticket"}) {
+      given()
+          .when()
+          .contentType("application/json")
+          .headers("X-Client-Id", "test")
+          .body("{\"name\": \"%s\"}".formatted(name))
+          .post()
+          .then()
+          .statusCode(201);
+    }
+
+    for (var name : new String[] {"first trouble ticket", "second trouble ticket"}) {
+      given()
+          .when()
+          .headers("X-Client-Id", "test")
+          .queryParam("name", name)
+          .get()
+          .then()
+          .statusCode(206)
+          .header("X-Total-Count", is("1"))
+          .body("[0].name", is(name));
+    }
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test")
+        .queryParam("name[=~]", "trouble ticket$")
+        .queryParam("name[ne]", "second trouble ticket")
+        .get()
+        .then()
+        .statusCode(206)
+        .header("X-Total-Count", is("1"))
+        .body("[0].name", is("first trouble ticket"));
+  }
+
+  @Test
+  public void testTotalCountMode() {
+    for (var name : new String[] {"first trouble ticket", "second trouble ticket"}) {
+      given()
+          .when()
+          .contentType("application/json")
+          .headers("X-Client-Id", "test")
+          .body("{\"name\": \"%s\"}".formatted(name))
+          .post()
+          .then()
+          .statusCode(201);
+    }
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test", "X-Total-Count-Mode", "none")
+        .queryParam("limit", 1)
+        .get()
+        .then()
+        .statusCode(206)
+        .header("X-Total-Count", nullValue())
+        .header("X-Result-Count", is("1"));
+
+    given()
+        .when()
+        .headers("X-Client-Id", "admin", "X-Total-Count-Mode", "estimated")
+        .queryParam("limit", 1)
+        .get()
+        .then()
+        .statusCode(206)
+        .header("X-Total-Count", is("2"))
+        .header("X-Result-Count", is("1"));
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test", "X-Total-Count-Mode", "unknown")
+        .get()
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testCursorPagination() {
+    for (var name : new String[] {"a trouble ticket", "b trouble ticket", "c trouble ticket"}) {
+      given()
+          .when()
+          .contentType("application/json")
+          .headers("X-Client-Id", "test")
+          .body("{\"name\": \"%s\"}".formatted(name))
+          .post()
+          .then()
+          .statusCode(201);
+    }
+
+    String cursor =
+        given()
+            .when()
+            .headers("X-Client-Id", "test")
+            .queryParam("sort", "-name")
+            .queryParam("limit", 2)
+            .queryParam("cursor", "")
+            .get()
+            .then()
+            .statusCode(206)
+            .header("X-Total-Count", is("3"))
+            .body("name", contains("c trouble ticket", "b trouble ticket"))
+            .extract()
+            .header("X-Next-Cursor");
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test")
+        .queryParam("sort", "-name")
+        .queryParam("limit", 2)
+        .queryParam("cursor", cursor)
+        .get()
+        .then()
+        .statusCode(206)
+        .header("X-Total-Count", nullValue())
+        .header("X-Next-Cursor", nullValue())
+        .body("name", contains("a trouble ticket"));
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test")
+        .queryParam("sort", "name")
+        .queryParam("cursor", cursor)
+        .get()
+        .then()
+        .statusCode(400);
+
+    // {"s": {"name": -1, "_id": 1}, "v": [{"$ne": null}, "x"]}
+    given()
+        .when()
+        .headers("X-Client-Id", "test")
+        .queryParam("sort", "-name")
+        .queryParam(
+            "cursor", "eyJzIjogeyJuYW1lIjogLTEsICJfaWQiOiAxfSwgInYiOiBbeyIkbmUiOiBudWxsfSwgIngiXX0")
+        .get()
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testBulkCreate() {
+    var results =
+        given()
+            .when()
+            .contentType("application/x-ndjson")
+            .accept("application/x-ndjson")
+            .headers("X-Client-Id", "test")
+            .body(
+                """
+                {"name": "first trouble ticket"}
+                {"name": ""}
+                "not an object"
+                {"name": "second trouble ticket", "doudou": "toto"}
+                """)
+            .post("bulk")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asString()
+            .lines()
+            .toList();
+
+    assertEquals(4, results.size());
+    assertTrue(results.get(0).contains("\"id\""));
+    assertTrue(results.get(1).contains("\"reason\""));
+    assertTrue(results.get(2).contains("\"reason\""));
+    assertTrue(results.get(3).contains("\"index\":3"));
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test")
+        .queryParam("sort", "name")
+        .get()
+        .then()
+        .statusCode(206)
+        .header("X-Total-Count", is("2"))
+        .body("name", contains("first trouble ticket", "second trouble ticket"))
+        .body("[1].doudou", is("toto"));
+  }
+
   @Test
   public void testFullLifeCycle() throws IOException {
     String id =
@@ -313,6 +498,17 @@ public class TroubleTicketTest {
         .statusCode(201)
         .body("name", is("test trouble ticket"))
         .body("doudou.toto", is("titi"));
+
+    given()
+        .when()
+        .headers("X-Client-Id", "test")
+        .queryParam("fields", "doudou,id")
+        .get()
+        .then()
+        .statusCode(206)
+        .body("[0].size()", is(2))
+        .body("[0].id", notNullValue())
+        .body("[0].doudou.toto", is("titi"));
   }
 
   @Test
@@ -354,4 +550,89 @@ public class TroubleTicketTest {
         .body("name", is("test trouble ticket"))
         .body("domain", is("doudou"));
   }
+
+  @Test
+  public void testUpsert() {
+    var id =
+        given()
+            .when()
+            .contentType("application/json")
+            .headers("X-Client-Id", "test")
+            .body(
+                """
+                {
+                    "name": "test trouble ticket",
+                    "status": "acknowledged"
+                }
+                """)
+            .put("external/EXT-1")
+            .then()
+            .statusCode(201)
+            .body("externalId", is("EXT-1"))
+            .body("statusChange.status", contains("acknowledged"))
+            .extract()
+            .path("id");
+
+    // the same status is not added again
+    given()
+        .when()
+        .contentType("application/json")
+        .headers("X-Client-Id", "test")
+        .body(
+            """
+            {
+                "name": "updated trouble ticket",
+                "status": "acknowledged"
+            }
+            """)
+        .put("external/EXT-1")
+        .then()
+        .statusCode(200)
+        .body("id", is(id))
+        .body("name", is("updated trouble ticket"))
+        .body("statusChange.status", contains("acknowledged"));
+
+    given()
+        .when()
+        .contentType("application/json")
+        .headers("X-Client-Id", "test")
+        .body(
+            """
+            {
+                "name": "updated trouble ticket",
+                "status": "inProgress",
+                "statusChangeReason": "assigned"
+            }
+            """)
+        .put("external/EXT-1")
+        .then()
+        .statusCode(200)
+        .body("id", is(id))
+        .body("status", is("inProgress"))
+        .body("statusChange.status", contains("acknowledged", "inProgress"))
+        .body("statusChange[1].changeReason", is("assigned"));
+
+    assertEquals(1L, repository.count().await().indefinitely());
+  }
+
+  @Test
+  public void testUpsertOtherDomain() {
+    for (var domain : new String[] {"test", "other"}) {
+      given()
+          .when()
+          .contentType("application/json")
+          .headers("X-Client-Id", domain)
+          .body(
+              """
+              {
+                  "name": "test trouble ticket"
+              }
+              """)
+          .put("external/EXT-1")
+          .then()
+          .statusCode(201);
+    }
+
+    assertEquals(2L, repository.count().await().indefinitely());
+  }
 }